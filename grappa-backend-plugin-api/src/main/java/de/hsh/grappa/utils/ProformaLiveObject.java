@@ -1,6 +1,5 @@
 package de.hsh.grappa.utils;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Constructor;
 import java.nio.charset.StandardCharsets;
@@ -13,6 +12,9 @@ import de.hsh.grappa.utils.Zip.ZipContentElement;
 /**
  * Helper class to represent a ProFormA task or submission or response in memory. This could be either a representation of
  * a XML or a ZIP file. 
+ *
+ * The files of a ZIP file are inflated on first access only. As long as neither the pojo nor any file
+ * has been touched, {@link #toResource(Class...)} returns the original content as is.
  */
 public abstract class ProformaLiveObject<R extends ProformaResource, P> {
     
@@ -23,6 +25,7 @@ public abstract class ProformaLiveObject<R extends ProformaResource, P> {
     
     private MimeType mimeType;
 
+    private byte[] originalZip;
     private Map<String,ZipContentElement> zipContent;
     private byte[] xmlContent;
     private Object pojo;
@@ -35,9 +38,8 @@ public abstract class ProformaLiveObject<R extends ProformaResource, P> {
     protected ProformaLiveObject(ProformaResource resource) throws Exception {
         this.mimeType= resource.getMimeType();
         if (resource.getMimeType().equals(MimeType.ZIP)) {
-            try (ByteArrayInputStream baos = new ByteArrayInputStream(resource.getContent())) {
-                zipContent= Zip.readZipFileToMap(baos);
-            }
+            originalZip= resource.getContent();
+            zipContent= Zip.indexZipFile(originalZip);
         } else {
             xmlContent= resource.getContent();
         }
@@ -111,7 +113,10 @@ public abstract class ProformaLiveObject<R extends ProformaResource, P> {
 
         MimeType mimeType;
         byte[] bytes;
-        if (zipContent != null) {
+        if (zipContent != null && pojo == null && !isAnyZipContentModified()) {
+            mimeType= MimeType.ZIP;
+            bytes= originalZip;
+        } else if (zipContent != null) {
             mimeType= MimeType.ZIP;
             try (ByteArrayOutputStream baos= new ByteArrayOutputStream()) {
                 Zip.writeMapToZipFile(zipContent, baos);
@@ -124,6 +129,13 @@ public abstract class ProformaLiveObject<R extends ProformaResource, P> {
             throw new AssertionError("Unexpected missing data to be converted to SubmissionRessource.");
         }
         Constructor<R> c= getResourceType().getConstructor(byte[].class, MimeType.class); 
-        return c.newInstance(bytes, MimeType.ZIP);
+        return c.newInstance(bytes, mimeType);
+    }
+
+    private boolean isAnyZipContentModified() {
+        for (ZipContentElement elem : zipContent.values()) {
+            if (elem.isModified()) return true;
+        }
+        return false;
     }
 }
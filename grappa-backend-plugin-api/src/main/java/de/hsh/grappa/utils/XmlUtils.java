@@ -4,27 +4,89 @@ import javax.xml.bind.*;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Marshals POJOs to XML and back.
+ *
+ * Creating a JAXBContext is expensive, so contexts are created once per
+ * set of bound classes and cached for the lifetime of the class loader.
+ * Marshallers and unmarshallers are cheap in comparison, but they are not
+ * thread-safe, so each one is used by one thread at a time and put back
+ * into a small pool afterwards.
+ */
 public class XmlUtils {
+    private static final int MAX_POOLED_PER_CONTEXT = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final ConcurrentHashMap<Set<Class<?>>, CachedContext> contexts = new ConcurrentHashMap<>();
+
+    private static class CachedContext {
+        final JAXBContext context;
+        final BlockingQueue<Marshaller> marshallers = new ArrayBlockingQueue<>(MAX_POOLED_PER_CONTEXT);
+        final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(MAX_POOLED_PER_CONTEXT);
+
+        CachedContext(Set<Class<?>> types) {
+            try {
+                context = JAXBContext.newInstance(types.toArray(new Class<?>[0]));
+            } catch (JAXBException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Marshaller acquireMarshaller() throws JAXBException {
+            Marshaller m = marshallers.poll();
+            return null != m ? m : context.createMarshaller();
+        }
+
+        Unmarshaller acquireUnmarshaller() throws JAXBException {
+            Unmarshaller u = unmarshallers.poll();
+            return null != u ? u : context.createUnmarshaller();
+        }
+    }
+
+    private XmlUtils() {}
+
+    /**
+     * @param types the classes to be bound, in any order
+     * @return the cached context for the given classes
+     */
+    public static JAXBContext getContext(Class<?>... types) {
+        return getCachedContext(types).context;
+    }
+
+    private static CachedContext getCachedContext(Class<?>... types) {
+        // The order of the classes doesn't matter to JAXB, so neither should it to the cache
+        Set<Class<?>> key = new HashSet<>(Arrays.asList(types));
+        return contexts.computeIfAbsent(key, CachedContext::new);
+    }
+
     public static String marshalToXml(Object source, Class<?>... type) {
-        String result;
+        CachedContext c = getCachedContext(type);
         StringWriter sw = new StringWriter();
         try {
-            JAXBContext context = JAXBContext.newInstance(type);
-            Marshaller marshaller = context.createMarshaller();
+            Marshaller marshaller = c.acquireMarshaller();
             marshaller.marshal(source, sw);
-            result = sw.toString();
+            // A marshaller that failed might be left in an undefined state, so it is only reused on success
+            c.marshallers.offer(marshaller);
         } catch (JAXBException e) {
             throw new RuntimeException(e);
         }
-        return result;
+        return sw.toString();
     }
 
+    @SuppressWarnings("unchecked")
     public static <T> T unmarshalToObject(InputStream is, Class<T> clazz) throws Exception {
-        JAXBContext c = JAXBContext.newInstance(clazz);
-        Unmarshaller u = c.createUnmarshaller();
-        JAXBElement<T> j = (JAXBElement<T>) u.unmarshal(is);
-        return j.getValue();
+        CachedContext c = getCachedContext(clazz);
+        Unmarshaller u = c.acquireUnmarshaller();
+        // Root elements are either bound directly or wrapped by a JAXBElement
+        T result = (T) JAXBIntrospector.getValue(u.unmarshal(is));
+        c.unmarshallers.offer(u);
+        return result;
     }
 
     public static <T> T unmarshalToObject(byte[] byteArray, Class<T> clazz) throws Exception {
@@ -32,4 +94,4 @@ public class XmlUtils {
             return unmarshalToObject(baos, clazz);
         }
     }
-}
\ No newline at end of file
+}
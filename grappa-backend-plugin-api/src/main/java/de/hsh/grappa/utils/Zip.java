@@ -3,28 +3,53 @@ package de.hsh.grappa.utils;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class Zip {
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_COPY_BUFFERS = 2 * Runtime.getRuntime().availableProcessors();
+    // A forged size in a zip file must not trigger an arbitrarily large allocation
+    private static final long MAX_PREALLOCATED_SIZE = 64 * 1024 * 1024;
+    // Copy buffers are only needed for entries of unknown size. They are small and
+    // reused, so reading a zip file allocates little more than the entries' content.
+    private static final BlockingQueue<byte[]> copyBuffers = new ArrayBlockingQueue<>(MAX_POOLED_COPY_BUFFERS);
     
     /**
      * An in-memory representation of a zip file's entry.
+     *
+     * An element read by {@link #indexZipFile(byte[])} refers to its compressed
+     * data in the original zip file, and is inflated on first access only.
      */
     public static class ZipContentElement {
         private String path;
         private byte[] bytes;
         private long time;
+        private RawEntry raw;
+        private boolean modified;
         public ZipContentElement(String path, byte[] bytes, long time) {
             super();
             this.path = path;
             this.bytes = bytes;
             this.time = time;
         }
+        private ZipContentElement(String path, RawEntry raw, long time) {
+            this.path = path;
+            this.raw = raw;
+            this.time = time;
+        }
         /**
          * @return the path, where directories end with a trailing '/'
          */
@@ -33,15 +58,25 @@ public class Zip {
         }
         /**
          * @return the content as a byte array
+         * @throws UncheckedIOException if the entry cannot be inflated
          */
         public byte[] getBytes() {
+            if (null == bytes && null != raw) {
+                try {
+                    bytes = raw.inflate();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(String.format("Cannot read '%s' from ZIP archive.", path), e);
+                }
+            }
             return bytes;
         }
         /**
          * @return the size in bytes
          */
         public long getSize() {
-            return bytes.length;
+            if (null == bytes && null != raw && raw.entry.getSize() >= 0)
+                return raw.entry.getSize();
+            return getBytes().length;
         }
         /**
          * @return The last modification time of the entry in milliseconds since the epoch 
@@ -55,31 +90,120 @@ public class Zip {
         public boolean isDirectory() {
             return path.endsWith("/");
         }
+        /**
+         * @return true, if any setter has been called since the element was read
+         */
+        public boolean isModified() {
+            return modified;
+        }
+        /**
+         * The content may have been changed in place through the array returned by
+         * {@link #getBytes()}, so once inflated, it must still match the original checksum.
+         * @return the compressed data of the entry in the original zip file,
+         *         or null if the element has not been read from a zip file or has been modified
+         */
+        RawEntry getRawEntry() {
+            if (modified || null == raw)
+                return null;
+            if (null != bytes && !raw.matches(bytes))
+                return null;
+            return raw;
+        }
         /**
          * @param path the path, where directories end with a trailing '/'
          */
         public void setPath(String path) {
             this.path = path;
+            this.modified = true;
         }
         /**
          * @param bytes the content as a byte array
          */
         public void setBytes(byte[] bytes) {
             this.bytes = bytes;
+            this.raw = null;
+            this.modified = true;
         }
         /**
          * @param time The last modification time of the entry in milliseconds since the epoch 
          */
         public void setTime(long time) {
             this.time = time;
+            this.modified = true;
+        }
+    }
+
+    /**
+     * The location of an entry's compressed data in a zip file in memory.
+     */
+    static class RawEntry {
+        private final byte[] zipBytes;
+        private final ZipArchiveEntry entry;
+        private final long dataOffset;
+
+        private RawEntry(byte[] zipBytes, ZipArchiveEntry entry) {
+            this.zipBytes = zipBytes;
+            this.entry = entry;
+            this.dataOffset = entry.getDataOffset();
+        }
+
+        ZipArchiveEntry getEntry() {
+            return entry;
+        }
+
+        /**
+         * @return true, if the content has the size and checksum of the entry
+         */
+        boolean matches(byte[] content) {
+            if (entry.getSize() != content.length || -1 == entry.getCrc())
+                return false;
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            return crc.getValue() == entry.getCrc();
+        }
+
+        /**
+         * @return true, if the compressed data can be sliced right out of the zip file
+         */
+        boolean isContiguous() {
+            long csize = entry.getCompressedSize();
+            return dataOffset >= 0 && csize >= 0 && dataOffset + csize <= zipBytes.length
+                && entry.isStreamContiguous() && !entry.getGeneralPurposeBit().usesEncryption();
+        }
+
+        /**
+         * @return the compressed data as stored in the zip file
+         */
+        InputStream openRawStream() {
+            return new ByteArrayInputStream(zipBytes, (int) dataOffset, (int) entry.getCompressedSize());
+        }
+
+        byte[] inflate() throws IOException {
+            if (isContiguous()) {
+                switch (entry.getMethod()) {
+                    case ZipArchiveEntry.STORED:
+                        return readEntry(openRawStream(), entry.getSize());
+                    case ZipArchiveEntry.DEFLATED:
+                        Inflater inflater = new Inflater(true);
+                        try (InputStream in = new InflaterInputStream(openRawStream(), inflater)) {
+                            return readEntry(in, entry.getSize());
+                        } finally {
+                            inflater.end();
+                        }
+                    default:
+                        break;
+                }
+            }
+            // Let commons-compress deal with anything else
+            try (ZipView zip = new ZipView(zipBytes)) {
+                return zip.getBytes(zip.getEntry(entry.getName()));
+            }
         }
     }
     
     
     public static String getTextFileContentFromZip(byte[] zipBytes, String fileName, Charset charset) throws Exception {
-        try (ByteArrayInputStream baos = new ByteArrayInputStream(zipBytes)) {
-            return getTextFileContentFromZip(baos, fileName, charset);
-        }
+        return new String(getFileFromZip(zipBytes, fileName), charset);
     }
 
     public static String getTextFileContentFromZip(InputStream zipStream, String fileName, Charset charset) throws Exception {
@@ -87,44 +211,65 @@ public class Zip {
         return new String(content, charset);
     }
 
+    /**
+     * Looks up a single file in the central directory of a zip file.
+     * When reading more than one file from the same zip file, open
+     * a {@link ZipView} once instead.
+     */
     public static byte[] getFileFromZip(byte[] zipBytes, String fileName) throws Exception {
-        try (ByteArrayInputStream is = new ByteArrayInputStream(zipBytes)) {
-            return getFileFromZip(is, fileName);
+        try (ZipView zip = new ZipView(zipBytes)) {
+            return zip.getFile(fileName);
         }
     }
 
     public static byte[] getFileFromZip(InputStream zipStream, String fileName) throws Exception {
         Path filePath = Paths.get(fileName);
-        //System.out.println("Looking for " + filePath + " in ZIP...");
-        boolean fileNotFound = true;
-
         try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new BufferedInputStream(zipStream))) {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
             ZipArchiveEntry entry = null;
             while (null != (entry = zip.getNextZipEntry())) {
                 Path zePath = Paths.get(entry.getName());
-                //System.out.println("Checking file/derectory in ZIP: " + zePath);
-                if (zePath.equals(filePath)) {
-                    fileNotFound = false;
-                    byte[] buffer = new byte[10000000]; // 10Mb file
-                    int len;
-                    while (-1 != (len = zip.read(buffer))) {
-                        out.write(buffer, 0, len);
-                    }
-                    out.close();
-                    break;
-                }
+                if (zePath.equals(filePath))
+                    return readEntry(zip, entry.getSize());
             }
-
-            if (fileNotFound)
-                throw new FileNotFoundException(String.format("File '%s' not found in ZIP archive.", filePath));
-            return out.toByteArray();
+            throw new FileNotFoundException(String.format("File '%s' not found in ZIP archive.", filePath));
         } catch (Throwable e) {
             System.err.println(e);
             throw e;
         }
     }
-    
+
+    /**
+     * Reads the content of a zip entry.
+     * @param in the stream of the entry's content
+     * @param size the uncompressed size of the entry as stated in the zip file,
+     *             or -1 if it is unknown
+     * @return the content
+     */
+    static byte[] readEntry(InputStream in, long size) throws IOException {
+        if (size >= 0 && size <= MAX_PREALLOCATED_SIZE) {
+            // The size is known upfront, so the content is read right into an array of that size
+            byte[] content = new byte[(int) size];
+            int read = IOUtils.readFully(in, content);
+            if (read < content.length)
+                throw new EOFException(String.format("Zip entry ended after %d of %d bytes.", read, size));
+            if (-1 != in.read())
+                throw new IOException(String.format("Zip entry is larger than the stated %d bytes.", size));
+            return content;
+        }
+        byte[] buffer = copyBuffers.poll();
+        if (null == buffer)
+            buffer = new byte[COPY_BUFFER_SIZE];
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(COPY_BUFFER_SIZE);
+            int len;
+            while (-1 != (len = in.read(buffer)))
+                out.write(buffer, 0, len);
+            return out.toByteArray();
+        } finally {
+            copyBuffers.offer(buffer);
+        }
+    }
+
     /**
      * Read a zip file from a stream and return a map of all contents in memory.
      * All paths will be normalized to the '/' dir separator.
@@ -136,19 +281,12 @@ public class Zip {
         Map<String,ZipContentElement> result= new TreeMap<>();
         try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new BufferedInputStream(zipStream))) {
             ZipArchiveEntry entry = null;
-            byte[] buffer = new byte[10000000]; // 10Mb file
             while (null != (entry = zip.getNextZipEntry())) {
                 if (!entry.isDirectory()) {
-                    ByteArrayOutputStream out = new ByteArrayOutputStream();
-                    int len;
-                    while (-1 != (len = zip.read(buffer))) {
-                        out.write(buffer, 0, len);
-                    }
-                    out.close();
                     String p= entry.getName();
                     p= p.replace('\\', '/');
                     long time= entry.getTime();
-                    ZipContentElement elem= new ZipContentElement(p, out.toByteArray(), time);
+                    ZipContentElement elem= new ZipContentElement(p, readEntry(zip, entry.getSize()), time);
                     result.put(p, elem);
                 }
             }
@@ -156,8 +294,33 @@ public class Zip {
         }
     }
     
+    /**
+     * Index a zip file without inflating any entry. The returned elements keep a
+     * reference to the given zip file and inflate their content on first access.
+     * All paths will be normalized to the '/' dir separator.
+     * @param zipBytes source
+     * @return the content of the zip file as a map pointing paths to elements
+     * @throws IOException
+     */
+    public static Map<String,ZipContentElement> indexZipFile(byte[] zipBytes) throws IOException {
+        Map<String,ZipContentElement> result= new TreeMap<>();
+        try (ZipView zip = new ZipView(zipBytes)) {
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                if (!entry.isDirectory()) {
+                    String p= entry.getName().replace('\\', '/');
+                    result.put(p, new ZipContentElement(p, new RawEntry(zipBytes, entry), entry.getTime()));
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Write in memory elements to a zip file output stream.
+     * Unmodified elements read by {@link #indexZipFile(byte[])} are copied with their
+     * original compressed data, so only new or modified elements get compressed. The
+     * content of an element that has been accessed is checked against the original
+     * checksum first, in case it has been changed in place.
      * @param content The in memory elements to be written
      * @param os the target stream
      * @throws IOException
@@ -166,13 +329,18 @@ public class Zip {
         try (ZipArchiveOutputStream zip= new ZipArchiveOutputStream(new BufferedOutputStream(os))) {
             for (String path : content.keySet()) {
                 ZipContentElement elem= content.get(path);
+                RawEntry raw= elem.getRawEntry();
+                if (raw != null && !elem.isDirectory() && raw.isContiguous()) {
+                    zip.addRawArchiveEntry(createRawCopyEntry(path, elem, raw.getEntry()), raw.openRawStream());
+                    continue;
+                }
                 ZipArchiveEntry entry = new ZipArchiveEntry(path);
                 entry.setSize(elem.getSize());
                 entry.setTime(elem.getTime());
                 
                 zip.putArchiveEntry(entry);
                 if (!elem.isDirectory()) {
-                    zip.write(elem.bytes);
+                    zip.write(elem.getBytes());
                 }
                 zip.closeArchiveEntry();
             }
@@ -180,6 +348,17 @@ public class Zip {
         }
     }
 
+    private static ZipArchiveEntry createRawCopyEntry(String path, ZipContentElement elem, ZipArchiveEntry source) {
+        // Sizes and checksum are known upfront, so no data descriptor is written
+        ZipArchiveEntry entry = new ZipArchiveEntry(path);
+        entry.setMethod(source.getMethod());
+        entry.setCrc(source.getCrc());
+        entry.setCompressedSize(source.getCompressedSize());
+        entry.setSize(source.getSize());
+        entry.setTime(elem.getTime());
+        return entry;
+    }
+
 // This code (Java's native ZipInputStream) works just fine.
 // However its error info on exceptions is pretty much non-existent
 // when it comes to handling invalid ZIP files.
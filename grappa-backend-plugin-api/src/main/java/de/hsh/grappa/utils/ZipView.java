@@ -0,0 +1,98 @@
+package de.hsh.grappa.utils;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A random access view of a zip file in memory.
+ *
+ * The central directory is read once when the view is opened. Looking up
+ * an entry doesn't need to walk through all preceding entries, and only
+ * the requested entry is inflated.
+ *
+ * A view should be opened once per zip file and shared by everyone
+ * reading from it. It must be closed after use.
+ */
+public class ZipView implements Closeable {
+    private final ZipFile zipFile;
+    private Map<String, ZipArchiveEntry> normalizedEntries;
+
+    public ZipView(byte[] zipBytes) throws IOException {
+        this.zipFile = new ZipFile(new SeekableInMemoryByteChannel(zipBytes));
+    }
+
+    /**
+     * @return all entries in the order of the central directory
+     */
+    public Enumeration<ZipArchiveEntry> getEntries() {
+        return zipFile.getEntries();
+    }
+
+    /**
+     * @param path the path of a file, using either '/' or '\' as dir separator
+     * @return the entry, or null if there is no such entry
+     */
+    public ZipArchiveEntry getEntry(String path) {
+        ZipArchiveEntry entry = zipFile.getEntry(path);
+        if (null != entry)
+            return entry;
+        // Not every zip tool writes entry names the same way, e.g. with '\' as dir separator
+        return getNormalizedEntries().get(normalize(path));
+    }
+
+    public boolean contains(String path) {
+        return null != getEntry(path);
+    }
+
+    /**
+     * @param path the path of a file
+     * @return the uncompressed content of the file
+     * @throws FileNotFoundException if there is no such file
+     */
+    public byte[] getFile(String path) throws IOException {
+        ZipArchiveEntry entry = getEntry(path);
+        if (null == entry || entry.isDirectory())
+            throw new FileNotFoundException(String.format("File '%s' not found in ZIP archive.", path));
+        return getBytes(entry);
+    }
+
+    /**
+     * @param entry an entry of this zip file
+     * @return the uncompressed content of the entry
+     */
+    public byte[] getBytes(ZipArchiveEntry entry) throws IOException {
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            return Zip.readEntry(is, entry.getSize());
+        }
+    }
+
+    private synchronized Map<String, ZipArchiveEntry> getNormalizedEntries() {
+        if (null == normalizedEntries) {
+            Map<String, ZipArchiveEntry> map = new HashMap<>();
+            for (ZipArchiveEntry e : Collections.list(zipFile.getEntries()))
+                map.putIfAbsent(normalize(e.getName()), e);
+            normalizedEntries = map;
+        }
+        return normalizedEntries;
+    }
+
+    private static String normalize(String path) {
+        return Paths.get(path.replace('\\', '/')).normalize().toString().replace('\\', '/');
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+}
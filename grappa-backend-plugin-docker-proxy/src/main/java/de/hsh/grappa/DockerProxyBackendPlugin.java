@@ -2,10 +2,6 @@ package de.hsh.grappa;
 
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.InspectContainerResponse;
-import com.github.dockerjava.core.DefaultDockerClientConfig;
-import com.github.dockerjava.core.DockerClientConfig;
-import com.github.dockerjava.core.DockerClientImpl;
-import com.github.dockerjava.jaxrs.JerseyDockerHttpClient;
 import com.google.common.base.Strings;
 import de.hsh.grappa.plugin.BackendPlugin;
 import de.hsh.grappa.proforma.MimeType;
@@ -34,6 +30,10 @@ import java.util.Properties;
  * retrieves the results (a Proforma response resource in case of
  * success, or a grader error stack trace in case of failure),
  * and returns it back to the Grappa web service.
+ *
+ * The connection to the docker host is shared by all grading
+ * processes (see SharedDockerClient). Optionally, containers are
+ * created ahead of time (see WarmContainerPool).
  */
 public class DockerProxyBackendPlugin implements BackendPlugin {
     private static final Logger log = LoggerFactory.getLogger(DockerProxyBackendPlugin.class);
@@ -47,6 +47,10 @@ public class DockerProxyBackendPlugin implements BackendPlugin {
     private String dockerHost;
     private String copySubmissionToDirectoryPath;
     private String responseResultDirectoryPath;
+    private int maxConnections;
+    private int healthCheckIntervalSeconds;
+    private int warmPoolSize;
+    private int warmPoolMaxConcurrentCreations;
 
     private static final String GRAPPA_CONTEXT_GRADER_ID = "Grappa.Context.GraderId";
     private static final String GRAPPA_CONTEXT_GRADE_PROCESS_ID = "Grappa.Context.GraderProcessId";
@@ -65,151 +69,184 @@ public class DockerProxyBackendPlugin implements BackendPlugin {
         copySubmissionToDirectoryPath =
             props.get("dockerproxybackendplugin.copy_submission_to_directory_path").toString();
         responseResultDirectoryPath = props.get("dockerproxybackendplugin.response_result_directory_path").toString();
+        maxConnections = Integer.parseInt(props.getProperty("dockerproxybackendplugin.max_connections",
+            String.valueOf(SharedDockerClient.DEFAULT_MAX_CONNECTIONS)));
+        healthCheckIntervalSeconds = Integer.parseInt(props.getProperty(
+            "dockerproxybackendplugin.health_check_interval_seconds",
+            String.valueOf(SharedDockerClient.DEFAULT_HEALTH_CHECK_INTERVAL_SECONDS)));
+        warmPoolSize = Integer.parseInt(props.getProperty("dockerproxybackendplugin.warm_pool_size",
+            String.valueOf(WarmContainerPool.DEFAULT_SIZE)));
+        warmPoolMaxConcurrentCreations = Integer.parseInt(props.getProperty(
+            "dockerproxybackendplugin.warm_pool_max_concurrent_creations",
+            String.valueOf(WarmContainerPool.DEFAULT_MAX_CONCURRENT_CREATIONS)));
     }
 
     @Override
     public ResponseResource grade(SubmissionResource submission) throws Exception {
         log.debug("[GraderId: '{}', GradeProcId: '{}']: Entering DockerProxyBackendPlugin.grade()...",
             graderId, gradeProcId);
-        log.info("[GraderId: '{}', GradeProcId: '{}']: Setting up docker connection to: {}",
+        log.info("[GraderId: '{}', GradeProcId: '{}']: Using docker connection to: {}",
             graderId, gradeProcId, dockerHost);
+        DockerClient dockerClient = SharedDockerClient.get(dockerHost, maxConnections,
+            healthCheckIntervalSeconds);
 
-        DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
-            .withDockerHost(dockerHost)
-            .withDockerTlsVerify(false)
-            .build();
-
-        try (JerseyDockerHttpClient httpClient = new JerseyDockerHttpClient.Builder()
-            .dockerHost(config.getDockerHost())
-            .build(); DockerClient dockerClient = DockerClientImpl.getInstance(config, httpClient)) {
-
-            log.info("[GraderId: '{}', GradeProcId: '{}']: Pinging docker daemon...",
-                graderId, gradeProcId);
-            dockerClient.pingCmd().exec();
-            log.info("[GraderId: '{}', GradeProcId: '{}']: Ping successful.",
-                graderId, gradeProcId);
-
-             log.info("[GraderId: '{}', GradeProcId: '{}']: Creating container from image '{}'...",
+        String containerId = takeWarmContainer(dockerClient, submission);
+        if (null == containerId) {
+            log.info("[GraderId: '{}', GradeProcId: '{}']: Creating container from image '{}'...",
                 graderId, gradeProcId, dockerContainerImage);
-             String containerId = DockerController.createContainer(dockerClient, dockerContainerImage);
-             log.info("[GraderId: '{}', GradeProcId: '{}']: Container with id '{}' created",
+            containerId = DockerController.createContainer(dockerClient, dockerContainerImage);
+            log.info("[GraderId: '{}', GradeProcId: '{}']: Container with id '{}' created",
                 graderId, gradeProcId, containerId);
 
-             copySubmissionToContainer(dockerClient, containerId, submission);
+            copySubmissionToContainer(dockerClient, containerId, submission);
+        }
 
-             log.info("[GraderId: '{}', GradeProcId: '{}']: Starting container...",
-                graderId, gradeProcId);
-             // Starts container and subsequentlly the grading process
-             DockerController.startContainer(dockerClient, containerId);
+        log.info("[GraderId: '{}', GradeProcId: '{}']: Starting container...",
+            graderId, gradeProcId);
+        // Starts container and subsequentlly the grading process
+        DockerController.startContainer(dockerClient, containerId);
 
-             long exitCode = -1;
-            try {
-                exitCode = waitForContainerToFinishGrading(dockerClient, containerId);
-                log.info("[GraderId: '{}', GradeProcId: '{}']: Container finished with exit code {}",
-                    graderId, gradeProcId, exitCode);
-            } catch (InterruptedException e) {
-                log.info("[GraderId: '{}', GradeProcId: '{}']: Thread interrupted while waiting for the grading result, proceeding to deleting docker " +
-                    "container...", graderId, gradeProcId);
-                Thread.currentThread().interrupt(); // preserve interrupt flag
-            }
+        long exitCode = -1;
+        try {
+            exitCode = waitForContainerToFinishGrading(dockerClient, containerId);
+            log.info("[GraderId: '{}', GradeProcId: '{}']: Container finished with exit code {}",
+                graderId, gradeProcId, exitCode);
+        } catch (InterruptedException e) {
+            log.info("[GraderId: '{}', GradeProcId: '{}']: Thread interrupted while waiting for the grading result, proceeding to deleting docker " +
+                "container...", graderId, gradeProcId);
+            Thread.currentThread().interrupt(); // preserve interrupt flag
+        }
 
-            ResponseResource responseResource = null;
-            String graderStackTrace = null;
-            if (0 != exitCode) {
-                log.error("[GraderId: '{}', GradeProcId: '{}']: Grader finished abnormally with exit " +
-                    "code {}", graderId, gradeProcId, exitCode);
-                log.info("[GraderId: '{}', GradeProcId: '{}']: Fetching grader stack trace file: {}",
+        ResponseResource responseResource = null;
+        String graderStackTrace = null;
+        if (0 != exitCode) {
+            log.error("[GraderId: '{}', GradeProcId: '{}']: Grader finished abnormally with exit " +
+                "code {}", graderId, gradeProcId, exitCode);
+            log.info("[GraderId: '{}', GradeProcId: '{}']: Fetching grader stack trace file: {}",
+                graderId, gradeProcId, GRADER_EXCEPTION_STACKTRACE_FILE_PATH);
+            try (InputStream is = DockerController.fetchFile(dockerClient, containerId,
+                GRADER_EXCEPTION_STACKTRACE_FILE_PATH)) {
+                graderStackTrace = IOUtils.toString(is, "utf8");
+            } catch (Exception e) {
+                log.error("[GraderId: '{}', GradeProcId: '{}']: Could not load grader stack trace file '{}'.",
                     graderId, gradeProcId, GRADER_EXCEPTION_STACKTRACE_FILE_PATH);
-                try (InputStream is = DockerController.fetchFile(dockerClient, containerId,
-                    GRADER_EXCEPTION_STACKTRACE_FILE_PATH)) {
-                    graderStackTrace = IOUtils.toString(is, "utf8");
-                } catch (Exception e) {
-                    log.error("[GraderId: '{}', GradeProcId: '{}']: Could not load grader stack trace file '{}'.",
-                        graderId, gradeProcId, GRADER_EXCEPTION_STACKTRACE_FILE_PATH);
-                    log.error(ExceptionUtils.getStackTrace(e));
-                }
-            } else {
-                // Thread interruption: Do not expect (nor care about) any result or container log
-                // with the running container and grading process about to be stopped and removed
-                if (!Thread.currentThread().isInterrupted()) {
-                    try {
-                        responseResource = fetchProformaResponseFile(dockerClient, containerId);
-                    } catch (InterruptedException e) {
-                        log.info("[GraderId: '{}', GradeProcId: '{}']: Thread interruption during fetching response result file.",
-                            graderId, gradeProcId);
-                        Thread.currentThread().interrupt();
-                    } catch (Exception e) {
-                        log.error("[GraderId: '{}', GradeProcId: '{}']: Failed to fetch response file from container.",
-                            graderId, gradeProcId);
-                        log.error(e.getMessage());
-                        log.error(ExceptionUtils.getStackTrace(e));
-                    }
-                }
+                log.error(ExceptionUtils.getStackTrace(e));
             }
-
+        } else {
+            // Thread interruption: Do not expect (nor care about) any result or container log
+            // with the running container and grading process about to be stopped and removed
             if (!Thread.currentThread().isInterrupted()) {
-                log.info("[GraderId: '{}', GradeProcId: '{}']: Fetching container log...",
-                    graderId, gradeProcId);
                 try {
-                    List<String> logs = DockerController.getContainerLog(dockerClient, containerId);
-                    // display the logs as a single transactional text block so the
-                    // lines don't get mixed up with other concurrent logging events
-                    StringBuilder sb = new StringBuilder("[START] ======================================================");
-                    sb.append(System.getProperty("line.separator"));
-                    //logs.forEach(sb::append);
-                    for(String s : logs) {
-                        sb.append("\t" + s);
-                        sb.append(System.getProperty("line.separator"));
-                    }
-                    sb.append("[END] ======================================================");
-                    log.info("[GraderId: '{}', GradeProcId: '{}']: [CONTAINER LOG]:{}{}",
-                        graderId, gradeProcId, System.getProperty("line.separator"), sb.toString());
+                    responseResource = fetchProformaResponseFile(dockerClient, containerId);
                 } catch (InterruptedException e) {
                     log.info("[GraderId: '{}', GradeProcId: '{}']: Thread interruption during fetching response result file.",
                         graderId, gradeProcId);
                     Thread.currentThread().interrupt();
                 } catch (Exception e) {
-                    log.error("[GraderId: '{}', GradeProcId: '{}']: Fetching container log failed.",
+                    log.error("[GraderId: '{}', GradeProcId: '{}']: Failed to fetch response file from container.",
                         graderId, gradeProcId);
                     log.error(e.getMessage());
                     log.error(ExceptionUtils.getStackTrace(e));
                 }
             }
+        }
 
+        if (!Thread.currentThread().isInterrupted()) {
+            log.info("[GraderId: '{}', GradeProcId: '{}']: Fetching container log...",
+                graderId, gradeProcId);
             try {
-                log.debug("[GraderId: '{}', GradeProcId: '{}']: Stopping container '{}'...",
-                    graderId, gradeProcId, containerId);
-                DockerController.stopContainer(dockerClient, containerId);
-                log.debug("[GraderId: '{}', GradeProcId: '{}']: Container stopped: '{}'",
-                    graderId, gradeProcId, containerId);
+                List<String> logs = DockerController.getContainerLog(dockerClient, containerId);
+                // display the logs as a single transactional text block so the
+                // lines don't get mixed up with other concurrent logging events
+                StringBuilder sb = new StringBuilder("[START] ======================================================");
+                sb.append(System.getProperty("line.separator"));
+                //logs.forEach(sb::append);
+                for(String s : logs) {
+                    sb.append("\t" + s);
+                    sb.append(System.getProperty("line.separator"));
+                }
+                sb.append("[END] ======================================================");
+                log.info("[GraderId: '{}', GradeProcId: '{}']: [CONTAINER LOG]:{}{}",
+                    graderId, gradeProcId, System.getProperty("line.separator"), sb.toString());
+            } catch (InterruptedException e) {
+                log.info("[GraderId: '{}', GradeProcId: '{}']: Thread interruption during fetching response result file.",
+                    graderId, gradeProcId);
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
-                log.warn("[GraderId: '{}', GradeProcId: '{}']: Failed to stop container (it may already " +
-                    "have stopped): '{}'", graderId, gradeProcId, containerId);
+                log.error("[GraderId: '{}', GradeProcId: '{}']: Fetching container log failed.",
+                    graderId, gradeProcId);
+                log.error(e.getMessage());
+                log.error(ExceptionUtils.getStackTrace(e));
             }
+        }
 
+        try {
+            log.debug("[GraderId: '{}', GradeProcId: '{}']: Stopping container '{}'...",
+                graderId, gradeProcId, containerId);
+            DockerController.stopContainer(dockerClient, containerId);
+            log.debug("[GraderId: '{}', GradeProcId: '{}']: Container stopped: '{}'",
+                graderId, gradeProcId, containerId);
+        } catch (Exception e) {
+            log.warn("[GraderId: '{}', GradeProcId: '{}']: Failed to stop container (it may already " +
+                "have stopped): '{}'", graderId, gradeProcId, containerId);
+        }
+
+        try {
+            log.debug("[GraderId: '{}', GradeProcId: '{}']: Removing container '{}'...",
+                graderId, gradeProcId, containerId);
+            DockerController.removeContainer(dockerClient, containerId);
+            log.debug("[GraderId: '{}', GradeProcId: '{}']: Container removed: '{}'",
+                graderId, gradeProcId, containerId);
+        } catch (Exception e) {
+            log.error("[GraderId: '{}', GradeProcId: '{}']: Failed to remove container '{}'",
+                graderId, gradeProcId, containerId);
+            log.error(e.getMessage());
+        }
+
+        log.info("[GraderId: '{}', GradeProcId: '{}']: DockerProxyBackendPlugin finished.",
+            graderId, gradeProcId);
+        if (!Strings.isNullOrEmpty(graderStackTrace)) {
+            log.info("[GraderId: '{}', GradeProcId: '{}']: Re-throwing grader exception stack trace.",
+                graderId, gradeProcId);
+            throw new GraderException(graderStackTrace);
+        }
+
+        // if the grader was interrupted, but shut down gracefully, it should still
+        // return a null proforma response, and that's what we will return
+        return responseResource;
+    }
+
+    /**
+     * Takes a pre-created container from the warm pool, if enabled, and copies
+     * the submission to it.
+     * @return the container id, or null if no container could be taken
+     */
+    private String takeWarmContainer(DockerClient dockerClient, SubmissionResource submission) {
+        if (warmPoolSize <= 0)
+            return null;
+        String containerId = WarmContainerPool.get(dockerHost, dockerClient, dockerContainerImage, warmPoolSize,
+            warmPoolMaxConcurrentCreations).take();
+        if (null == containerId) {
+            log.info("[GraderId: '{}', GradeProcId: '{}']: Warm container pool is empty.",
+                graderId, gradeProcId);
+            return null;
+        }
+        log.info("[GraderId: '{}', GradeProcId: '{}']: Container with id '{}' taken from the warm pool",
+            graderId, gradeProcId, containerId);
+        try {
+            copySubmissionToContainer(dockerClient, containerId, submission);
+            return containerId;
+        } catch (Exception e) {
+            // The pooled container may be gone, e.g. after the docker daemon has been restarted
+            log.warn("[GraderId: '{}', GradeProcId: '{}']: Failed to copy the submission to pooled container " +
+                "'{}': {}", graderId, gradeProcId, containerId, e.getMessage());
             try {
-                log.debug("[GraderId: '{}', GradeProcId: '{}']: Removing container '{}'...",
-                    graderId, gradeProcId, containerId);
                 DockerController.removeContainer(dockerClient, containerId);
-                log.debug("[GraderId: '{}', GradeProcId: '{}']: Container removed: '{}'",
+            } catch (Exception ex) {
+                log.debug("[GraderId: '{}', GradeProcId: '{}']: Failed to remove pooled container '{}'",
                     graderId, gradeProcId, containerId);
-            } catch (Exception e) {
-                log.error("[GraderId: '{}', GradeProcId: '{}']: Failed to remove container '{}'",
-                    graderId, gradeProcId, containerId);
-                log.error(e.getMessage());
             }
-
-            log.info("[GraderId: '{}', GradeProcId: '{}']: DockerProxyBackendPlugin finished.",
-                graderId, gradeProcId);
-            if (!Strings.isNullOrEmpty(graderStackTrace)) {
-                log.info("[GraderId: '{}', GradeProcId: '{}']: Re-throwing grader exception stack trace.",
-                    graderId, gradeProcId);
-                throw new GraderException(graderStackTrace);
-            }
-
-            // if the grader was interrupted, but shut down gracefully, it should still
-            // return a null proforma response, and that's what we will return
-            return responseResource;
+            return null;
         }
     }
 
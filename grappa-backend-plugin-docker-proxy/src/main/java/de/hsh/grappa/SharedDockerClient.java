@@ -0,0 +1,106 @@
+package de.hsh.grappa;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.jaxrs.JerseyDockerHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A docker client per docker host, shared by all grading processes.
+ *
+ * Setting up a docker client bootstraps a Jersey client and connects to
+ * the docker daemon, which used to be done for every single submission.
+ * A shared client keeps its connections to the docker daemon open in a
+ * pool for reuse.
+ *
+ * Docker hosts are pinged in the background, so grading processes don't
+ * need to ping the docker daemon themselves. Only if the last ping of a
+ * docker host failed, a grading process pings it again before using it.
+ *
+ * The settings of the first grading process requesting the client of a
+ * docker host apply to all others.
+ *
+ * This class is safe for concurrent use.
+ */
+public class SharedDockerClient {
+    private static final Logger log = LoggerFactory.getLogger(SharedDockerClient.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_HEALTH_CHECK_INTERVAL_SECONDS = 30;
+
+    private static final ConcurrentHashMap<String, SharedDockerClient> clients = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "docker-health-check");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String dockerHost;
+    private final DockerClient client;
+    private volatile boolean healthy = true;
+
+    private SharedDockerClient(String dockerHost, int maxConnections) {
+        this.dockerHost = dockerHost;
+        DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
+            .withDockerHost(dockerHost)
+            .withDockerTlsVerify(false)
+            .build();
+        JerseyDockerHttpClient httpClient = new JerseyDockerHttpClient.Builder()
+            .dockerHost(config.getDockerHost())
+            .maxTotalConnections(maxConnections)
+            .maxPerRouteConnections(maxConnections)
+            .build();
+        this.client = DockerClientImpl.getInstance(config, httpClient);
+    }
+
+    /**
+     * @param dockerHost the docker host uri, e.g. tcp://127.0.0.1:2376
+     * @param maxConnections the maximum number of connections kept open to the docker host
+     * @param healthCheckIntervalSeconds how often the docker host is pinged
+     * @return the shared client of the docker host. It must not be closed.
+     * @throws Exception if the docker host could not be reached by the last ping, and still cannot be
+     */
+    public static DockerClient get(String dockerHost, int maxConnections, int healthCheckIntervalSeconds)
+        throws Exception {
+        SharedDockerClient shared = clients.computeIfAbsent(dockerHost, host -> {
+            log.info("Setting up shared docker connection to: {}", host);
+            SharedDockerClient c = new SharedDockerClient(host, maxConnections);
+            healthChecker.scheduleWithFixedDelay(c::checkHealth, healthCheckIntervalSeconds,
+                healthCheckIntervalSeconds, TimeUnit.SECONDS);
+            return c;
+        });
+        if (!shared.healthy) {
+            log.info("Pinging docker daemon at '{}', which did not answer the last ping...", dockerHost);
+            shared.ping();
+        }
+        return shared.client;
+    }
+
+    private void ping() throws Exception {
+        try {
+            client.pingCmd().exec();
+        } catch (Exception e) {
+            healthy = false;
+            throw e;
+        }
+        if (!healthy)
+            log.info("Docker daemon at '{}' is reachable again.", dockerHost);
+        healthy = true;
+    }
+
+    private void checkHealth() {
+        try {
+            ping();
+        } catch (Exception e) {
+            log.error("Docker daemon at '{}' did not answer the ping: {}", dockerHost, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package de.hsh.grappa;
+
+import com.github.dockerjava.api.DockerClient;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of containers created ahead of time from an image, so creating a
+ * container is not on the critical path of a grading process.
+ *
+ * Containers are single-use: a container taken from the pool is never
+ * returned, but stopped and removed after grading as usual. Every container
+ * taken is replaced right away. The pool is refilled by up to
+ * maxConcurrentCreations containers at a time, so it follows the demand of
+ * the grading processes: while they drain it, it is refilled at full rate,
+ * and while it is full, nothing is created at all.
+ *
+ * If the pool is empty, a grading process creates its container itself.
+ * The pooled containers are removed when the JVM shuts down.
+ *
+ * The settings of the first grading process requesting the pool of an
+ * image apply to all others.
+ *
+ * This class is safe for concurrent use.
+ */
+public class WarmContainerPool {
+    private static final Logger log = LoggerFactory.getLogger(WarmContainerPool.class);
+
+    public static final int DEFAULT_SIZE = 0;
+    public static final int DEFAULT_MAX_CONCURRENT_CREATIONS = 2;
+
+    private static final ConcurrentHashMap<String, WarmContainerPool> pools = new ConcurrentHashMap<>();
+
+    private final DockerClient client;
+    private final String image;
+    private final int size;
+    private final int maxConcurrentCreations;
+    private final LinkedBlockingQueue<String> containerIds = new LinkedBlockingQueue<>();
+    private final AtomicInteger creating = new AtomicInteger();
+    private final ExecutorService creator;
+
+    private WarmContainerPool(DockerClient client, String image, int size, int maxConcurrentCreations) {
+        this.client = client;
+        this.image = image;
+        this.size = size;
+        this.maxConcurrentCreations = Math.max(1, maxConcurrentCreations);
+        this.creator = Executors.newFixedThreadPool(this.maxConcurrentCreations, r -> {
+            Thread t = new Thread(r, "warm-container-pool");
+            t.setDaemon(true);
+            return t;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::removeAll));
+    }
+
+    /**
+     * @param dockerHost the docker host uri the client is connected to
+     * @param client a client that is never closed, see SharedDockerClient
+     * @param image the image to create containers from
+     * @param size the number of containers kept ready
+     * @param maxConcurrentCreations the number of containers created at a time
+     * @return the pool of the image on the docker host, filling up in the background
+     */
+    public static WarmContainerPool get(String dockerHost, DockerClient client, String image, int size,
+                                        int maxConcurrentCreations) {
+        return pools.computeIfAbsent(dockerHost + "|" + image, key -> {
+            log.info("Keeping {} containers of image '{}' ready on '{}'.", size, image, dockerHost);
+            WarmContainerPool pool = new WarmContainerPool(client, image, size, maxConcurrentCreations);
+            pool.refill();
+            return pool;
+        });
+    }
+
+    /**
+     * Takes a container out of the pool. The container has been created, but
+     * not started yet.
+     * @return the container id, or null if the pool is empty
+     */
+    public String take() {
+        String containerId = containerIds.poll();
+        refill();
+        return containerId;
+    }
+
+    private void refill() {
+        while (true) {
+            int c = creating.get();
+            if (c >= maxConcurrentCreations || containerIds.size() + c >= size)
+                return;
+            if (creating.compareAndSet(c, c + 1))
+                creator.execute(this::createContainer);
+        }
+    }
+
+    private void createContainer() {
+        boolean created = false;
+        try {
+            containerIds.add(DockerController.createContainer(client, image));
+            created = true;
+        } catch (Exception e) {
+            // Don't retry right away, the next container taken triggers a refill
+            log.error("Creating a container of image '{}' for the warm pool failed: {}", image, e.getMessage());
+            log.error(ExceptionUtils.getStackTrace(e));
+        } finally {
+            creating.decrementAndGet();
+        }
+        if (created)
+            refill();
+    }
+
+    private void removeAll() {
+        String containerId;
+        while (null != (containerId = containerIds.poll())) {
+            try {
+                DockerController.removeContainer(client, containerId);
+            } catch (Exception e) {
+                log.warn("Failed to remove pooled container '{}'.", containerId);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package de.hsh.grappa;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.jaxrs.JerseyDockerHttpClient;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the docker connection overhead per grading process: a docker
+ * client set up and pinged for every grading process, as it used to be,
+ * compared to the SharedDockerClient. Each grading process sends one
+ * request (a ping) to the docker daemon.
+ *
+ * The docker daemon is played by a local HTTP server answering pings,
+ * unless a real one is given by -Ddocker.host=tcp://host:port.
+ *
+ * This is not part of the regular test run. Run it manually:
+ * mvn test -Dtest=DockerClientBenchmark -Dbenchmark=true
+ */
+public class DockerClientBenchmark {
+    private static final int WARMUP_GRADES = 50;
+    private static final int MEASURED_GRADES = 500;
+
+    private interface Grade {
+        void run(String dockerHost) throws Exception;
+    }
+
+    @Test
+    public void compareConnectionOverheadPerGrade() throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        HttpServer daemon = null;
+        String dockerHost = System.getProperty("docker.host");
+        if (null == dockerHost) {
+            daemon = startFakeDaemon();
+            dockerHost = "tcp://127.0.0.1:" + daemon.getAddress().getPort();
+        }
+        try {
+            report("client per grading process", run(DockerClientBenchmark::gradeWithOwnClient, dockerHost));
+            report("shared client", run(h -> SharedDockerClient.get(h, SharedDockerClient.DEFAULT_MAX_CONNECTIONS,
+                SharedDockerClient.DEFAULT_HEALTH_CHECK_INTERVAL_SECONDS).pingCmd().exec(), dockerHost));
+        } finally {
+            if (null != daemon)
+                daemon.stop(0);
+        }
+    }
+
+    private static double run(Grade grade, String dockerHost) throws Exception {
+        for (int i = 0; i < WARMUP_GRADES; ++i)
+            grade.run(dockerHost);
+        long begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_GRADES; ++i)
+            grade.run(dockerHost);
+        return (System.nanoTime() - begin) / 1e6 / MEASURED_GRADES;
+    }
+
+    private static void report(String name, double millisPerGrade) {
+        System.out.println(String.format("%-28s %8.3f ms per grading process", name, millisPerGrade));
+    }
+
+    /**
+     * How DockerProxyBackendPlugin.grade() used to connect to the docker daemon
+     */
+    private static void gradeWithOwnClient(String dockerHost) throws Exception {
+        DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
+            .withDockerHost(dockerHost)
+            .withDockerTlsVerify(false)
+            .build();
+        try (JerseyDockerHttpClient httpClient = new JerseyDockerHttpClient.Builder()
+            .dockerHost(config.getDockerHost())
+            .build(); DockerClient dockerClient = DockerClientImpl.getInstance(config, httpClient)) {
+            dockerClient.pingCmd().exec();
+            // the request the grading process was about to send
+            dockerClient.pingCmd().exec();
+        }
+    }
+
+    private static HttpServer startFakeDaemon() throws Exception {
+        // Don't let Nagle's algorithm delay the replies
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "OK".getBytes(StandardCharsets.US_ASCII);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
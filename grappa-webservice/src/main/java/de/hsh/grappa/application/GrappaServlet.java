@@ -4,7 +4,9 @@ import ch.qos.logback.classic.Level;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import de.hsh.grappa.cache.RedisController;
+import de.hsh.grappa.cache.TaskMemoryCache;
 import de.hsh.grappa.config.GrappaConfig;
+import de.hsh.grappa.service.GradeCompletionRegistry;
 import de.hsh.grappa.service.GraderPoolManager;
 import de.hsh.grappa.service.GradingEnvironmentSetup;
 import de.hsh.grappa.utils.ClassLoaderHelper;
@@ -24,8 +26,6 @@ public class GrappaServlet implements ServletContextListener {
     private static final Logger log = LoggerFactory.getLogger(GrappaServlet.class);
     public static final String CONFIG_FILENAME_PATH = "/etc/grappa/grappa-config.yaml";
 
-    private Thread t;
-
     private static String grappaInstanceName = "grappa-webservice";
 
     @Override
@@ -49,8 +49,6 @@ public class GrappaServlet implements ServletContextListener {
             setupRedisConnection();
             //loadGradingEnvironmentSetups();
             GraderPoolManager.getInstance().init(CONFIG.getGraders());
-            t = new Thread(GraderPoolManager.getInstance());
-            t.start();
         } catch (Exception e) {
             log.error("Error during webservice initialization.");
             log.error(e.getMessage());
@@ -62,8 +60,7 @@ public class GrappaServlet implements ServletContextListener {
     @Override
     public void contextDestroyed(ServletContextEvent ctxEvent) {
         try {
-            GraderPoolManager.getInstance().stopStartingNewGradingProcesses();
-            t.interrupt();
+            GraderPoolManager.getInstance().shutdown();
             RedisController.getInstance().shutdown();
         } catch (Exception e) {
             log.error("Error during webservice deinitialization.");
@@ -97,6 +94,9 @@ public class GrappaServlet implements ServletContextListener {
         //redis = new RedisController(CONFIG.getCache());
         //redis.init();
         RedisController.getInstance().init(CONFIG.getCache());
+        TaskMemoryCache.getInstance().init(CONFIG.getCache());
+        // Wake up clients waiting for responses cached by any grappa instance
+        RedisController.getInstance().subscribeToResponses(GradeCompletionRegistry.getInstance()::complete);
         log.info("Testing redis connection...");
         if (RedisController.getInstance().ping()) {
             log.info("Redis connection established");
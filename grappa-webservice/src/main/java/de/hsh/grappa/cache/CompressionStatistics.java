@@ -0,0 +1,83 @@
+package de.hsh.grappa.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how much the compression of cached resources saves
+ * and what it costs.
+ *
+ * Since compressing and decompressing is purely CPU bound,
+ * the time spent doing it is the CPU time it takes.
+ */
+public class CompressionStatistics {
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+    private final AtomicLong decompressed = new AtomicLong();
+    private final AtomicLong decompressionNanos = new AtomicLong();
+
+    void addCompressed(long uncompressedSize, long compressedSize, long nanos) {
+        compressed.incrementAndGet();
+        uncompressedBytes.addAndGet(uncompressedSize);
+        compressedBytes.addAndGet(compressedSize);
+        compressionNanos.addAndGet(nanos);
+    }
+
+    void addDecompressed(long nanos) {
+        decompressed.incrementAndGet();
+        decompressionNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return the number of resources stored compressed
+     */
+    public long getCompressed() {
+        return compressed.get();
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return the original size divided by the compressed size of all
+     * compressed resources, or 0 if nothing has been compressed yet
+     */
+    public double getCompressionRatio() {
+        long out = compressedBytes.get();
+        return 0 == out ? 0 : (double) uncompressedBytes.get() / out;
+    }
+
+    public long getCompressionMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(compressionNanos.get());
+    }
+
+    /**
+     * @return the number of compressed resources read from the cache
+     */
+    public long getDecompressed() {
+        return decompressed.get();
+    }
+
+    public long getDecompressionMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(decompressionNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStatistics{" +
+            "compressed=" + compressed +
+            ", uncompressedBytes=" + uncompressedBytes +
+            ", compressedBytes=" + compressedBytes +
+            ", compressionNanos=" + compressionNanos +
+            ", decompressed=" + decompressed +
+            ", decompressionNanos=" + decompressionNanos +
+            '}';
+    }
+}
@@ -0,0 +1,204 @@
+package de.hsh.grappa.cache;
+
+import de.hsh.grappa.config.CompressionConfig;
+import de.hsh.grappa.proforma.MimeType;
+import de.hsh.grappa.proforma.ProformaResource;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.function.BiFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes ProformaResource objects (submissions, tasks and responses)
+ * into the binary format they are stored in redis, and back.
+ *
+ * The format is a small header followed by the resource content:
+ * <pre>
+ * [magic: 2 bytes][version: 1 byte][mime type: 1 byte][codec: 1 byte][content length: 4 bytes][content...]
+ * </pre>
+ * The codec tells how the content is compressed. ZIP resources are
+ * compressed already and are always stored as they are, XML resources
+ * are deflated if they exceed the configured size threshold and
+ * compressing them actually saves space.
+ *
+ * Earlier versions of grappa stored resources as base64 encoded, Java
+ * serialized objects. Those values can still be decoded, so resources
+ * cached before an update remain usable until their TTL expires. The
+ * magic bytes are outside of the base64 alphabet, so the two formats
+ * can't be mistaken for one another.
+ */
+final class ProformaResourceCodec {
+    private static final byte[] MAGIC = {(byte) 0xC0, (byte) 0xDE};
+    private static final byte VERSION = 2;
+    // version, mime type and codec tags, content length
+    private static final int HEADER_LENGTH = MAGIC.length + 3 + 4;
+
+    private static final byte MIME_TYPE_XML = 0;
+    private static final byte MIME_TYPE_ZIP = 1;
+
+    private static final byte CODEC_NONE = 0;
+    private static final byte CODEC_DEFLATE = 1;
+
+    private final CompressionConfig config;
+    private final CompressionStatistics statistics = new CompressionStatistics();
+
+    ProformaResourceCodec(CompressionConfig config) {
+        this.config = null != config ? config : new CompressionConfig();
+    }
+
+    CompressionStatistics getStatistics() {
+        return statistics;
+    }
+
+    byte[] encode(ProformaResource resource) {
+        byte[] content = resource.getContent();
+        byte[] bytes = new byte[HEADER_LENGTH + content.length];
+        bytes[0] = MAGIC[0];
+        bytes[1] = MAGIC[1];
+        bytes[2] = VERSION;
+        bytes[3] = toTag(resource.getMimeType());
+        ByteBuffer.wrap(bytes, HEADER_LENGTH - 4, 4).putInt(content.length);
+        if (shouldCompress(resource)) {
+            int compressedLength = deflate(content, bytes);
+            if (compressedLength >= 0) {
+                bytes[4] = CODEC_DEFLATE;
+                return Arrays.copyOf(bytes, HEADER_LENGTH + compressedLength);
+            }
+        }
+        bytes[4] = CODEC_NONE;
+        System.arraycopy(content, 0, bytes, HEADER_LENGTH, content.length);
+        return bytes;
+    }
+
+    /**
+     * @param bytes   the value as stored in redis
+     * @param factory creates the concrete resource, e.g. SubmissionResource::new
+     * @throws SerializationException if the value can't be decoded
+     */
+    <T extends ProformaResource> T decode(byte[] bytes, BiFunction<byte[], MimeType, T> factory) {
+        if (!hasHeader(bytes))
+            return decodeLegacy(bytes, factory);
+        if (VERSION != bytes[2] || bytes.length < HEADER_LENGTH)
+            throw new SerializationException(String.format("Unsupported resource format version %d.", bytes[2]));
+        int length = ByteBuffer.wrap(bytes, HEADER_LENGTH - 4, 4).getInt();
+        if (length < 0)
+            throw new SerializationException(String.format("Invalid resource length %d.", length));
+        switch (bytes[4]) {
+            case CODEC_NONE:
+                if (bytes.length - HEADER_LENGTH != length)
+                    throw new SerializationException(String.format("Resource has %d of %d bytes.",
+                        bytes.length - HEADER_LENGTH, length));
+                return factory.apply(Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length), fromTag(bytes[3]));
+            case CODEC_DEFLATE:
+                return factory.apply(inflate(bytes, length), fromTag(bytes[3]));
+            default:
+                throw new SerializationException(String.format("Unknown codec tag %d.", bytes[4]));
+        }
+    }
+
+    private boolean shouldCompress(ProformaResource resource) {
+        return config.getEnabled() && MimeType.XML == resource.getMimeType()
+            && resource.getContent().length >= config.getMin_size_bytes();
+    }
+
+    /**
+     * Deflates the content into the bytes following the header of dest.
+     * @return the compressed length, or -1 if the content didn't get any smaller
+     */
+    private int deflate(byte[] content, byte[] dest) {
+        long begin = System.nanoTime();
+        Deflater deflater = new Deflater(config.getLevel(), true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            // dest has exactly as much space as the uncompressed content, so if deflating
+            // doesn't finish within it, there's no point in compressing
+            int length = 0;
+            while (!deflater.finished() && length < content.length) {
+                int n = deflater.deflate(dest, HEADER_LENGTH + length, content.length - length);
+                if (0 == n)
+                    break;
+                length += n;
+            }
+            if (!deflater.finished())
+                return -1;
+            statistics.addCompressed(content.length, length, System.nanoTime() - begin);
+            return length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(byte[] bytes, int length) {
+        long begin = System.nanoTime();
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            byte[] content = new byte[length];
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int n = inflater.inflate(content, inflated, length - inflated);
+                if (0 == n && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                inflated += n;
+            }
+            if (inflated != length)
+                throw new SerializationException(String.format("Inflated %d of %d bytes.", inflated, length));
+            // The content may be complete before the end of the compressed data has been read
+            if (!inflater.finished() && 0 != inflater.inflate(new byte[1]))
+                throw new SerializationException(String.format("Inflated more than %d bytes.", length));
+            if (!inflater.finished())
+                throw new SerializationException("Compressed resource is truncated.");
+            statistics.addDecompressed(System.nanoTime() - begin);
+            return content;
+        } catch (DataFormatException e) {
+            throw new SerializationException("Compressed resource is corrupt.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static boolean hasHeader(byte[] bytes) {
+        return bytes.length >= MAGIC.length + 1 && MAGIC[0] == bytes[0] && MAGIC[1] == bytes[1];
+    }
+
+    private static <T extends ProformaResource> T decodeLegacy(byte[] bytes,
+                                                               BiFunction<byte[], MimeType, T> factory) {
+        try {
+            byte[] serialized = Base64.getDecoder().decode(new String(bytes, StandardCharsets.US_ASCII));
+            ProformaResource resource = SerializationUtils.deserialize(serialized);
+            return factory.apply(resource.getContent(), resource.getMimeType());
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new SerializationException("Value is neither a binary nor a legacy encoded resource.", e);
+        }
+    }
+
+    private static byte toTag(MimeType mimeType) {
+        switch (mimeType) {
+            case XML:
+                return MIME_TYPE_XML;
+            case ZIP:
+                return MIME_TYPE_ZIP;
+            default:
+                throw new IllegalArgumentException(String.format("Unsupported mime type '%s'.", mimeType));
+        }
+    }
+
+    private static MimeType fromTag(byte tag) {
+        switch (tag) {
+            case MIME_TYPE_XML:
+                return MimeType.XML;
+            case MIME_TYPE_ZIP:
+                return MimeType.ZIP;
+            default:
+                throw new SerializationException(String.format("Unknown mime type tag %d.", tag));
+        }
+    }
+}
@@ -1,28 +1,31 @@
 package de.hsh.grappa.cache;
 
 import de.hsh.grappa.config.CacheConfig;
+import de.hsh.grappa.config.RedisConfig;
 import de.hsh.grappa.exceptions.GrappaException;
 import de.hsh.grappa.exceptions.NotFoundException;
+import de.hsh.grappa.proforma.ProformaResource;
 import de.hsh.grappa.proforma.ResponseResource;
 import de.hsh.grappa.proforma.SubmissionResource;
 import de.hsh.grappa.proforma.TaskResource;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
 import redis.clients.jedis.Protocol;
 import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.SafeEncoder;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.time.Duration;
-import java.util.Base64;
-import java.util.Date;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.function.Consumer;
 
 /**
  * This class uses an underlying redis client instance to
@@ -38,6 +41,12 @@ import java.util.stream.IntStream;
  * Submissions are cached for a given amount of time (as specified in
  * the grappa config).
  *
+ * Tasks are stored content-addressed, i.e. by the SHA-256 hash of their
+ * bytes, and a task uuid only refers to the hash of the task last published
+ * under that uuid. Identical tasks are stored once, no matter how many
+ * uuids refer to them, and a changed task published under a reused uuid
+ * replaces the former one instead of being shadowed by it.
+ *
  * Data that is currently cached along with submission resources is notably:
  * - (the entire submission resource itself)
  * - the underlying task resource
@@ -45,23 +54,30 @@ import java.util.stream.IntStream;
  * - the date and time of submission
  * - the corresponding graderId the submission has been submitted to
  * - the corresponding gradeProcId of the submission
+ *
+ * This class is safe for concurrent use. Every call borrows its own
+ * connection from the (thread-safe) pool, so slow calls, such as fetching
+ * a large response, don't block others. Multi-key updates that must not
+ * be observed half-done, such as queueing a submission, are sent as
+ * redis transactions or Lua scripts.
  */
 public class RedisController {
     private static final Logger log = LoggerFactory.getLogger(RedisController.class);
 
     private static RedisController instance = new RedisController();
-    private JedisPool jedisPool= null;
-    private CacheConfig cacheConfig;
+    private volatile JedisPool jedisPool= null;
+    private volatile CacheConfig cacheConfig;
+    private volatile ProformaResourceCodec codec = new ProformaResourceCodec(null);
+    private ResponseSubscriber responseSubscriber = null;
 
-    private static final Base64.Encoder base64Encoder= Base64.getEncoder();
-    private static final Base64.Decoder base64Decoder= Base64.getDecoder();
-    
-    
-    private JedisPoolConfig buildPoolConfig() {
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 5000;
+
+
+    private JedisPoolConfig buildPoolConfig(RedisConfig redisConfig) {
         final JedisPoolConfig poolConfig = new JedisPoolConfig();
-        poolConfig.setMaxTotal(16);
-        poolConfig.setMaxIdle(16);
-        poolConfig.setMinIdle(4);
+        poolConfig.setMaxTotal(redisConfig.getMax_connections());
+        poolConfig.setMaxIdle(redisConfig.getMax_connections());
+        poolConfig.setMinIdle(Math.min(redisConfig.getMin_idle_connections(), redisConfig.getMax_connections()));
         poolConfig.setTestOnBorrow(true);
         poolConfig.setTestOnReturn(true);
         poolConfig.setTestWhileIdle(true);
@@ -81,23 +97,29 @@ public class RedisController {
 
     public synchronized void init(CacheConfig cc) {
         this.cacheConfig = cc;
-        final JedisPoolConfig poolConfig = buildPoolConfig();
+        this.codec = new ProformaResourceCodec(cacheConfig.getCompression());
+        final JedisPoolConfig poolConfig = buildPoolConfig(cacheConfig.getRedis());
         jedisPool = new JedisPool(poolConfig,
                 cacheConfig.getRedis().getHost(), 
                 cacheConfig.getRedis().getPort(),
                 Protocol.DEFAULT_TIMEOUT,
                 cacheConfig.getRedis().getPassword(),
                 false /* no ssl */);
-        log.info("Setting up redis connection with URI '{}:{}'...", cacheConfig.getRedis().getHost(), 
-                cacheConfig.getRedis().getPort());
+        log.info("Setting up redis connection with URI '{}:{}' and a pool of up to {} connections...",
+                cacheConfig.getRedis().getHost(), cacheConfig.getRedis().getPort(),
+                cacheConfig.getRedis().getMax_connections());
     }
 
     public synchronized void shutdown() {
+        if (null != responseSubscriber) {
+            responseSubscriber.stop();
+            responseSubscriber = null;
+        }
         if (null != jedisPool)
             jedisPool.destroy();
     }
 
-    public synchronized boolean ping() {
+    public boolean ping() {
         try (var jedis= jedisPool.getResource()) {
             log.info("PING... ");
             String pong = jedis.ping();
@@ -111,13 +133,226 @@ public class RedisController {
     }
 
     /**
-     * This is the list's name where submission's gradeProcIds to be
+     * This is the sorted set's name where submission's gradeProcIds to be
      * processed are queued. Each graderId has its own submission queue,
      * so the actual submission queue looks like this:
      * submission-queue:graderId
+     * <p>
+     * The score of a gradeProcId is its sequence number (see
+     * SUBMISSION_QUEUE_SEQUENCE_PREFIX), so the queue is FIFO ordered and
+     * a submission's position is its rank, which redis looks up in O(log N).
+     * Prioritized submissions are scored with the negated sequence number,
+     * which puts them in front of all others, the latest one first.
      */
     private static final String SUBMISSION_QUEUE_PREFIX = "submission-queue:";
 
+    /**
+     * A counter per graderId that hands out the sequence numbers used as
+     * scores in the submission queue.
+     * <p>
+     * E.g. submission-queue-sequence:graderId
+     */
+    private static final String SUBMISSION_QUEUE_SEQUENCE_PREFIX = "submission-queue-sequence:";
+
+    /**
+     * Converts a submission queue of the former list representation into a
+     * sorted set, keeping the order of the queued gradeProcIds.
+     */
+    private static final RedisScript MIGRATE_LIST_QUEUE_SCRIPT = new RedisScript(
+        "if redis.call('TYPE', KEYS[1]).ok ~= 'list' then return 0 end\n" +
+        "local ids = redis.call('LRANGE', KEYS[1], 0, -1)\n" +
+        "redis.call('DEL', KEYS[1])\n" +
+        "for _, id in ipairs(ids) do\n" +
+        "  redis.call('ZADD', KEYS[1], redis.call('INCR', KEYS[2]), id)\n" +
+        "end\n" +
+        "return #ids");
+
+    /**
+     * Hands the grade process of a cancelled gradeProcId over to the first
+     * gradeProcId attached to it (see ATTACHED_GRADEPROCIDS_PREFIX): that one is
+     * queued with the given score, takes over the remaining attached gradeProcIds
+     * and becomes the in-flight submission. Without attached gradeProcIds, the
+     * in-flight submission is removed.
+     * <p>
+     * Returns the promoted gradeProcId, or false if there was none.
+     */
+    private static final String PROMOTE_ATTACHED_FUNCTION =
+        "local function promote(id, inflightKey, attachedPrefix, queue, score, ttl)\n" +
+        "  local attachedKey = attachedPrefix .. id\n" +
+        "  local next = redis.call('LPOP', attachedKey)\n" +
+        "  if not next then\n" +
+        "    if redis.call('GET', inflightKey) == id then redis.call('DEL', inflightKey) end\n" +
+        "    return false\n" +
+        "  end\n" +
+        "  if redis.call('EXISTS', attachedKey) == 1 then\n" +
+        "    redis.call('RENAME', attachedKey, attachedPrefix .. next)\n" +
+        "    redis.call('EXPIRE', attachedPrefix .. next, ttl)\n" +
+        "  end\n" +
+        "  redis.call('SET', inflightKey, next, 'EX', ttl)\n" +
+        "  redis.call('ZADD', queue, score, next)\n" +
+        "  return next\n" +
+        "end\n";
+
+    /**
+     * Queues a submission: stores the submission, its timestamp and the gradeProcId
+     * mappings, draws a sequence number and adds the gradeProcId to the queue.
+     * <p>
+     * If an identical submission is in flight already, i.e. queued or being graded,
+     * the gradeProcId is attached to that grade process instead of being queued.
+     * <p>
+     * KEYS: submission, timestamp, graderId map, taskUuid map, queue sequence, queue,
+     * in-flight submission, in-flight key map
+     * ARGV: submission, timestamp, graderId, taskUuid, ttl seconds, prioritize (0/1), gradeProcId,
+     * in-flight key, attached prefix, response prefix
+     * <p>
+     * Returns the sequence number, or the gradeProcId the submission has been attached to.
+     */
+    private static final RedisScript PUSH_SUBMISSION_SCRIPT = new RedisScript(
+        "local ttl = tonumber(ARGV[5])\n" +
+        "redis.call('SET', KEYS[1], ARGV[1], 'EX', ttl)\n" +
+        "redis.call('SET', KEYS[2], ARGV[2], 'EX', ttl)\n" +
+        "redis.call('SET', KEYS[3], ARGV[3], 'EX', ttl)\n" +
+        "redis.call('SET', KEYS[4], ARGV[4], 'EX', ttl)\n" +
+        "redis.call('SET', KEYS[8], ARGV[8], 'EX', ttl)\n" +
+        "local primary = redis.call('GET', KEYS[7])\n" +
+        "if primary and redis.call('EXISTS', ARGV[10] .. primary) == 0 then\n" +
+        "  redis.call('RPUSH', ARGV[9] .. primary, ARGV[7])\n" +
+        "  redis.call('EXPIRE', ARGV[9] .. primary, ttl)\n" +
+        "  return primary\n" +
+        "end\n" +
+        "redis.call('SET', KEYS[7], ARGV[7], 'EX', ttl)\n" +
+        "local seq = redis.call('INCR', KEYS[5])\n" +
+        "local score = seq\n" +
+        "if ARGV[6] == '1' then score = -seq end\n" +
+        "redis.call('ZADD', KEYS[6], score, ARGV[7])\n" +
+        "return seq");
+
+    /**
+     * Pops the head of a submission queue along with its submission. The in-flight
+     * submission of the gradeProcId, if any, now expires after the given in-flight TTL,
+     * so duplicates are not attached to a grade process lost along with its grappa
+     * instance for longer than that.
+     * <p>
+     * KEYS: queue
+     * ARGV: submission prefix, in-flight key map prefix, in-flight prefix, in-flight ttl seconds
+     * <p>
+     * Returns the gradeProcId and its submission, or nil if the queue is empty.
+     */
+    private static final RedisScript POP_SUBMISSION_SCRIPT = new RedisScript(
+        "local head = redis.call('ZPOPMIN', KEYS[1])\n" +
+        "if #head == 0 then return false end\n" +
+        "local id = head[1]\n" +
+        "local inflightKey = redis.call('GET', ARGV[2] .. id)\n" +
+        "if inflightKey and redis.call('GET', ARGV[3] .. inflightKey) == id then\n" +
+        "  redis.call('EXPIRE', ARGV[3] .. inflightKey, ARGV[4])\n" +
+        "end\n" +
+        "return {id, redis.call('GET', ARGV[1] .. id)}");
+
+    /**
+     * Removes a gradeProcId from the queue, handing its grade process over to the
+     * first gradeProcId attached to it, if any. A gradeProcId attached to another
+     * one is detached.
+     * <p>
+     * KEYS: queue, in-flight key map
+     * ARGV: gradeProcId, in-flight prefix, attached prefix, ttl seconds
+     * <p>
+     * Returns 1 if the gradeProcId has been removed or detached, 0 otherwise.
+     */
+    private static final RedisScript REMOVE_SUBMISSION_SCRIPT = new RedisScript(
+        PROMOTE_ATTACHED_FUNCTION +
+        "local id = ARGV[1]\n" +
+        "local inflightKey = redis.call('GET', KEYS[2])\n" +
+        "local score = redis.call('ZSCORE', KEYS[1], id)\n" +
+        "if score then\n" +
+        "  redis.call('ZREM', KEYS[1], id)\n" +
+        "  if inflightKey then promote(id, ARGV[2] .. inflightKey, ARGV[3], KEYS[1], score, ARGV[4]) end\n" +
+        "  return 1\n" +
+        "end\n" +
+        "if not inflightKey then return 0 end\n" +
+        "local primary = redis.call('GET', ARGV[2] .. inflightKey)\n" +
+        "if not primary or primary == id then return 0 end\n" +
+        "if redis.call('LREM', ARGV[3] .. primary, 0, id) > 0 then return 1 end\n" +
+        "return 0");
+
+    /**
+     * Queues the first gradeProcId attached to a grade process that ended without
+     * a response, e.g. because it has been cancelled.
+     * <p>
+     * KEYS: in-flight key map, queue sequence, queue
+     * ARGV: gradeProcId, in-flight prefix, attached prefix, ttl seconds
+     * <p>
+     * Returns the queued gradeProcId, or nil if there was none.
+     */
+    private static final RedisScript REQUEUE_ATTACHED_SCRIPT = new RedisScript(
+        PROMOTE_ATTACHED_FUNCTION +
+        "local inflightKey = redis.call('GET', KEYS[1])\n" +
+        "if not inflightKey then return false end\n" +
+        "return promote(ARGV[1], ARGV[2] .. inflightKey, ARGV[3], KEYS[3], redis.call('INCR', KEYS[2]), ARGV[4])");
+
+    /**
+     * Stores a response and its timestamp, and publishes the gradeProcId. The same
+     * is done for every gradeProcId attached to the grade process, which is no
+     * longer in flight afterwards.
+     * <p>
+     * KEYS: response, timestamp, in-flight key map
+     * ARGV: response, timestamp, ttl seconds, gradeProcId, response channel, response prefix,
+     * timestamp prefix, attached prefix, in-flight prefix
+     * <p>
+     * Returns the attached gradeProcIds.
+     */
+    private static final RedisScript SET_RESPONSE_SCRIPT = new RedisScript(
+        "local ttl = tonumber(ARGV[3])\n" +
+        "redis.call('SET', KEYS[1], ARGV[1], 'EX', ttl)\n" +
+        "redis.call('SET', KEYS[2], ARGV[2], 'EX', ttl)\n" +
+        "redis.call('PUBLISH', ARGV[5], ARGV[4])\n" +
+        "local inflightKey = redis.call('GET', KEYS[3])\n" +
+        "if inflightKey and redis.call('GET', ARGV[9] .. inflightKey) == ARGV[4] then\n" +
+        "  redis.call('DEL', ARGV[9] .. inflightKey)\n" +
+        "end\n" +
+        "local attached = redis.call('LRANGE', ARGV[8] .. ARGV[4], 0, -1)\n" +
+        "redis.call('DEL', ARGV[8] .. ARGV[4])\n" +
+        "for _, id in ipairs(attached) do\n" +
+        "  redis.call('SET', ARGV[6] .. id, ARGV[1], 'EX', ttl)\n" +
+        "  redis.call('SET', ARGV[7] .. ARGV[6] .. id, ARGV[2], 'EX', ttl)\n" +
+        "  redis.call('PUBLISH', ARGV[5], id)\n" +
+        "end\n" +
+        "return attached");
+
+    /**
+     * Renews the TTL of a cached task and its timestamp, and maps the task uuid
+     * to the task's hash.
+     * <p>
+     * KEYS: task content, timestamp, taskUuid map
+     * ARGV: ttl seconds, task hash
+     * <p>
+     * Returns 0 if the task is not cached, leaving the map untouched. Otherwise,
+     * returns the hash the task uuid has been mapped to before, or 1 if there
+     * was none.
+     */
+    private static final RedisScript REFRESH_TASK_SCRIPT = new RedisScript(
+        "if redis.call('EXPIRE', KEYS[1], ARGV[1]) == 0 then return 0 end\n" +
+        "redis.call('EXPIRE', KEYS[2], ARGV[1])\n" +
+        "local prev = redis.call('GETSET', KEYS[3], ARGV[2])\n" +
+        "redis.call('EXPIRE', KEYS[3], ARGV[1])\n" +
+        "return prev or 1");
+
+    /**
+     * Stores a task, its timestamp, and maps the task uuid to the task's hash.
+     * <p>
+     * KEYS: task content, timestamp, taskUuid map
+     * ARGV: task, timestamp, ttl seconds, task hash
+     * <p>
+     * Returns the hash the task uuid has been mapped to before, or 1 if there
+     * was none.
+     */
+    private static final RedisScript CACHE_TASK_SCRIPT = new RedisScript(
+        "local ttl = tonumber(ARGV[3])\n" +
+        "redis.call('SET', KEYS[1], ARGV[1], 'EX', ttl)\n" +
+        "redis.call('SET', KEYS[2], ARGV[2], 'EX', ttl)\n" +
+        "local prev = redis.call('GETSET', KEYS[3], ARGV[4])\n" +
+        "redis.call('EXPIRE', KEYS[3], ttl)\n" +
+        "return prev or 1");
+
     /**
      * Maps a gradeProcId to a graderId so the list for a garder submission queue can be
      * inferred.
@@ -149,12 +384,28 @@ public class RedisController {
 
     /**
      * This is the prefix for task keys (taskUuid) used for storing
-     * submission byte arrays.
+     * task byte arrays by earlier versions of grappa. These tasks are
+     * still looked up until their TTL expires.
      * <p>
      * E.g. task:taskUuid
      */
     private static final String TASK_KEY_PREFIX = "task:";
 
+    /**
+     * This is the prefix for task keys (the hex encoded SHA-256 hash of
+     * the task bytes) used for storing task byte arrays.
+     * <p>
+     * E.g. task-content:taskHash
+     */
+    private static final String TASK_CONTENT_KEY_PREFIX = "task-content:";
+
+    /**
+     * Maps a task uuid to the hash of the task last published under that uuid.
+     * <p>
+     * Key: taskuuid-to-taskhash-map:taskUuid
+     */
+    private static final String TASKUUID_TO_TASKHASH_MAP = "taskuuid-to-taskhash-map:";
+
     private static final String TASK_AVG_GRADING_DURATION_SECONDS_KEY_PREFIX = "avg-grading-seconds:task:" +
         ":task:";
 
@@ -166,50 +417,139 @@ public class RedisController {
      */
     private static final String RESPONSE_KEY_PREFIX = "response:";
 
+    /**
+     * Maps a gradeProcId to the key of the grading result of its submission,
+     * if the grader's results are cached (see GradingResultCache).
+     * <p>
+     * Key: gradeprocid-to-resultkey-map:gradeProcId
+     */
+    private static final String GRADEPROCID_TO_RESULTKEY_MAP = "gradeprocid-to-resultkey-map:";
+
+    /**
+     * This is the prefix for cached grading results, i.e. the responses to
+     * submissions of identical content.
+     * <p>
+     * E.g. grading-result:graderId:taskHash:submissionHash
+     */
+    private static final String GRADING_RESULT_KEY_PREFIX = "grading-result:";
+
+    /**
+     * Maps a submission in flight, i.e. queued or being graded, to its gradeProcId,
+     * so identical submissions arriving in the meantime are attached to its grade
+     * process rather than graded again.
+     * <p>
+     * E.g. inflight-submission:graderId:taskHash:submissionHash
+     */
+    private static final String INFLIGHT_SUBMISSION_PREFIX = "inflight-submission:";
+
+    /**
+     * Maps a gradeProcId to the key of its submission in flight (without prefix).
+     * <p>
+     * Key: gradeprocid-to-inflightkey-map:gradeProcId
+     */
+    private static final String GRADEPROCID_TO_INFLIGHTKEY_MAP = "gradeprocid-to-inflightkey-map:";
+
+    /**
+     * The gradeProcIds of identical submissions attached to a grade process in
+     * flight. They are not queued themselves, but receive its response.
+     * <p>
+     * E.g. attached-gradeprocids:gradeProcId
+     */
+    private static final String ATTACHED_GRADEPROCIDS_PREFIX = "attached-gradeprocids:";
+
+    /**
+     * The pub/sub channel on which the gradeProcId of each newly cached
+     * response is published.
+     */
+    private static final String RESPONSE_CHANNEL = "response-available";
+
     /***
      * Returns the number of currently queued submissions for a given grader.
      * @param graderId
      * @return
      */
-    public synchronized long getSubmissionQueueCount(String graderId) {
+    public long getSubmissionQueueCount(String graderId) {
         // TODO: validate graderId
         // don't spam this: log.debug("[GraderId: '{}']: getSubmissionQueueCount()", graderId);
         try (var jedis = jedisPool.getResource()) {
-            return jedis.llen(SUBMISSION_QUEUE_PREFIX.concat(graderId));
+            return jedis.zcard(SUBMISSION_QUEUE_PREFIX.concat(graderId));
+        }
+    }
+
+    /**
+     * Converts the submission queue of a grader from the former list representation
+     * to a sorted set, if necessary. Queues created by earlier versions of
+     * grappa would otherwise be inaccessible.
+     * @param graderId
+     */
+    public void migrateSubmissionQueue(String graderId) {
+        try (var jedis = jedisPool.getResource()) {
+            Object migrated = MIGRATE_LIST_QUEUE_SCRIPT.eval(jedis,
+                keys(SUBMISSION_QUEUE_PREFIX.concat(graderId), SUBMISSION_QUEUE_SEQUENCE_PREFIX.concat(graderId)),
+                List.of());
+            if (0L != (Long) migrated)
+                log.info("[GraderId: '{}']: Migrated {} queued submissions to the sorted set queue.", graderId,
+                    migrated);
         }
     }
 
     /***
      * Queues a new submission for a given grader, with a specified grader process id.
+     *
+     * The submission, its mappings and its queue entry are written by a single script
+     * in one round trip. Redis runs scripts atomically, so a gradeProcId is never
+     * queued without its submission, and there are never mappings without a queued
+     * gradeProcId.
+     *
+     * If an identical submission (i.e. one with the same submissionKey) is queued or
+     * being graded already, the gradeProcId is attached to that grade process instead,
+     * and receives its response.
      * @param graderId
      * @param gradeProcId
+     * @param submissionKey identifies identical submissions to the grader
      * @param submissionResource
+     * @return the gradeProcId the submission has been attached to, or null if it has been queued
      */
-    public synchronized void pushSubmission(String graderId, String gradeProcId,
-                                            String taskUuid, SubmissionResource submissionResource,
-                                            boolean prioritize) {
+    public String pushSubmission(String graderId, String gradeProcId, String submissionKey,
+                                 String taskUuid, SubmissionResource submissionResource,
+                                 boolean prioritize) {
         log.debug("[GraderId: '{}', GradeProcId: '{}']: pushSubmission(): {}", graderId, gradeProcId,
             submissionResource);
-        // cache the submission data
         String submKey = SUBMISSION_KEY_PREFIX.concat(gradeProcId);
-        set(submKey, SerializationUtils.serialize(submissionResource),
-            cacheConfig.getSubmission_ttl_seconds());
-        setTimestamp(submKey, cacheConfig.getSubmission_ttl_seconds());
-        mapGraderProcIdToGraderId(gradeProcId, graderId);
-        mapGraderProcIdToTaskUuid(gradeProcId, taskUuid);
-        // push the graderProcId onto the queue
+        String inFlightKey = graderId + ":" + submissionKey;
+        List<byte[]> keys = keys(submKey,
+            TIMESTAMP_KEY_PREFIX.concat(submKey),
+            GRADEPROCID_TO_GRADERID_MAP.concat(gradeProcId),
+            GRADEPROCID_TO_TASKUUID_MAP.concat(gradeProcId),
+            SUBMISSION_QUEUE_SEQUENCE_PREFIX.concat(graderId),
+            SUBMISSION_QUEUE_PREFIX.concat(graderId),
+            INFLIGHT_SUBMISSION_PREFIX.concat(inFlightKey),
+            GRADEPROCID_TO_INFLIGHTKEY_MAP.concat(gradeProcId));
+        List<byte[]> args = List.of(codec.encode(submissionResource),
+            SafeEncoder.encode(createTimestamp()),
+            SafeEncoder.encode(graderId),
+            SafeEncoder.encode(taskUuid),
+            SafeEncoder.encode(String.valueOf(cacheConfig.getSubmission_ttl_seconds())),
+            SafeEncoder.encode(prioritize ? "1" : "0"),
+            SafeEncoder.encode(gradeProcId),
+            SafeEncoder.encode(inFlightKey),
+            SafeEncoder.encode(ATTACHED_GRADEPROCIDS_PREFIX),
+            SafeEncoder.encode(RESPONSE_KEY_PREFIX));
         try (var jedis= jedisPool.getResource()) {
-            long listSize;
-            if (prioritize)
-                listSize = jedis.lpush(SUBMISSION_QUEUE_PREFIX.concat(graderId), gradeProcId);
-            else
-                listSize = jedis.rpush(SUBMISSION_QUEUE_PREFIX.concat(graderId), gradeProcId);
-            log.debug("[GraderId: '{}', GradeProcId: '{}']: new queue size: {}", graderId, gradeProcId,
-                listSize);
+            Object ret = PUSH_SUBMISSION_SCRIPT.eval(jedis, keys, args);
+            if (ret instanceof byte[]) {
+                String attachedTo = SafeEncoder.encode((byte[]) ret);
+                log.debug("[GraderId: '{}', GradeProcId: '{}']: attached to gradeProcId '{}'", graderId, gradeProcId,
+                    attachedTo);
+                return attachedTo;
+            }
+            log.debug("[GraderId: '{}', GradeProcId: '{}']: queued with sequence number {}", graderId, gradeProcId,
+                ret);
+            return null;
         }
     }
 
-    private synchronized void validateGraderProcId(String gradeProcId) throws NotFoundException {
+    private void validateGraderProcId(String gradeProcId) throws NotFoundException {
         // If no graderId is mapped to this gradeProcId, then this
         // gradeProcId has never been created for a submission.
         String graderId = getAssociatedGraderId(gradeProcId);
@@ -217,55 +557,75 @@ public class RedisController {
 //            throw new NotFoundException(String.format("GradeProcId '%s' does not exist.", gradeProcId));
     }
 
-    public synchronized boolean isSubmissionQueued(String gradeProcId) throws NotFoundException {
+    public boolean isSubmissionQueued(String gradeProcId) throws NotFoundException {
         log.debug("[GradeProcId: '{}']: isSubmissionQueued() called.", gradeProcId);
         validateGraderProcId(gradeProcId);
         String graderId = getAssociatedGraderId(gradeProcId);
         try (var jedis= jedisPool.getResource()) {
-            List<String> graderQueue = jedis.lrange(SUBMISSION_QUEUE_PREFIX.concat(graderId), 0, -1);
-            int index = IntStream.range(0, graderQueue.size())
-                .filter(i -> gradeProcId.equals(graderQueue.get(i)))
-                .findFirst().orElse(-1);
-            return -1 != index;
+            return null != jedis.zscore(SUBMISSION_QUEUE_PREFIX.concat(graderId), gradeProcId);
         }
     }
 
     /**
-     * Get the index position of a submission in a queue.
+     * Get the index position of a submission in a queue. A gradeProcId attached to
+     * another one shares its position.
      *
      * @param gradeProcId
      * @return -1, if the submission is not queued (anymore), or a positive number.
      * 0, if the submission is literally up next for grading.
      * @throws NotFoundException
      */
-    public synchronized int getQueuedSubmissionIndex(String gradeProcId) throws NotFoundException {
+    public int getQueuedSubmissionIndex(String gradeProcId) throws NotFoundException {
         log.debug("[GradeProcId: '{}']: getSubmissionQueueIndex() called.", gradeProcId);
         validateGraderProcId(gradeProcId);
         String graderId = getAssociatedGraderId(gradeProcId);
         try (var jedis = jedisPool.getResource()) {
-            List<String> graderQueue = jedis.lrange(SUBMISSION_QUEUE_PREFIX.concat(graderId), 0, -1);
-            return IntStream.range(0, graderQueue.size())
-                .filter(i -> gradeProcId.equals(graderQueue.get(i)))
-                .findFirst().orElse(-1);
+            Long rank = jedis.zrank(SUBMISSION_QUEUE_PREFIX.concat(graderId), gradeProcId);
+            if (null == rank) {
+                String attachedTo = getAttachedToGradeProcId(gradeProcId);
+                if (null != attachedTo)
+                    rank = jedis.zrank(SUBMISSION_QUEUE_PREFIX.concat(graderId), attachedTo);
+            }
+            return null == rank ? -1 : rank.intValue();
         }
     }
 
+    /**
+     * @param gradeProcId
+     * @return the gradeProcId of the grade process in flight that the gradeProcId is attached to,
+     * or null if it isn't attached to any
+     */
+    public String getAttachedToGradeProcId(String gradeProcId) {
+        String inFlightKey = getString(GRADEPROCID_TO_INFLIGHTKEY_MAP.concat(gradeProcId));
+        if (null == inFlightKey)
+            return null;
+        String inFlightGradeProcId = getString(INFLIGHT_SUBMISSION_PREFIX.concat(inFlightKey));
+        return gradeProcId.equals(inFlightGradeProcId) ? null : inFlightGradeProcId;
+    }
+
     // TODO: removeAllQueuedSubmissions()
 
     /**
      * Cancels a queued or a currently being graded submission.
      *
+     * A queued submission with other gradeProcIds attached to it is replaced in the
+     * queue by the first one of them. An attached gradeProcId is detached.
+     *
      * @param gradeProcId
      * @return true, if the submission was cancelled (i.e. removed from cache and possibly cancelled mid-grading)
      */
-    public synchronized boolean removeSubmission(String gradeProcId) {
+    public boolean removeSubmission(String gradeProcId) {
         log.debug("[GradeProcId: '{}']: removeSubmission() called.", gradeProcId);
         try (var jedis = jedisPool.getResource()) {
             String graderId = jedis.get(GRADEPROCID_TO_GRADERID_MAP.concat(gradeProcId));
             if (null != graderId) {
-                long remCount = jedis.lrem(SUBMISSION_QUEUE_PREFIX.concat(graderId), 1, gradeProcId);
-                assert remCount <= 1 : "Removed more than one occurrance of the same gardeProcId in a grader queue";
-                if (1 == remCount) {
+                Object remCount = REMOVE_SUBMISSION_SCRIPT.eval(jedis,
+                    keys(SUBMISSION_QUEUE_PREFIX.concat(graderId), GRADEPROCID_TO_INFLIGHTKEY_MAP.concat(gradeProcId)),
+                    List.of(SafeEncoder.encode(gradeProcId),
+                        SafeEncoder.encode(INFLIGHT_SUBMISSION_PREFIX),
+                        SafeEncoder.encode(ATTACHED_GRADEPROCIDS_PREFIX),
+                        SafeEncoder.encode(String.valueOf(cacheConfig.getSubmission_ttl_seconds()))));
+                if (1L == (Long) remCount) {
                     log.debug("[GradeProcId: '{}']: removeSubmission(): Submission removed from queue.", gradeProcId);
                     return true;
                 } else {
@@ -286,21 +646,32 @@ public class RedisController {
      * when a gradeProcId is popped from the queue. It will be removed passively when
      * its TTL expires.
      * @param graderId
+     * @param inFlightTimeoutSeconds how long identical submissions may still be attached to the
+     *                               popped submission's grade process
      * @return A QueuedSubmission object
      * @throws NotFoundException if a corresponding submission object for the gradeProcId does not exist (likely due
      * to TTL expiration)
      */
-    public synchronized QueuedSubmission popSubmission(String graderId) throws NotFoundException, GrappaException {
+    public QueuedSubmission popSubmission(String graderId, long inFlightTimeoutSeconds)
+        throws NotFoundException, GrappaException {
         log.debug("[GraderId: '{}']: popSubmission()", graderId);
         String gradeProcId = null;
+        byte[] subm = null;
         try (var jedis = jedisPool.getResource()) {
-            gradeProcId = jedis.lpop(SUBMISSION_QUEUE_PREFIX.concat(graderId));
+            Object head = POP_SUBMISSION_SCRIPT.eval(jedis, keys(SUBMISSION_QUEUE_PREFIX.concat(graderId)),
+                List.of(SafeEncoder.encode(SUBMISSION_KEY_PREFIX),
+                    SafeEncoder.encode(GRADEPROCID_TO_INFLIGHTKEY_MAP),
+                    SafeEncoder.encode(INFLIGHT_SUBMISSION_PREFIX),
+                    SafeEncoder.encode(String.valueOf(inFlightTimeoutSeconds))));
+            if (null != head) {
+                List<?> popped = (List<?>) head;
+                gradeProcId = SafeEncoder.encode((byte[]) popped.get(0));
+                subm = (byte[]) popped.get(1);
+            }
             //log.debug("Popped submission for grader '{}' with gradeProcId '{}'.",
             //        graderId, gradeProcId);
         }
         if (null != gradeProcId) {
-            String key = SUBMISSION_KEY_PREFIX.concat(gradeProcId);
-            byte[] subm = getByteArray(key);
             // No need to remove the cached submission object. It will be removed
             // when its TTL expires.
 
@@ -312,7 +683,7 @@ public class RedisController {
             }
 
             try {
-                return new QueuedSubmission(gradeProcId, SerializationUtils.deserialize(subm));
+                return new QueuedSubmission(gradeProcId, codec.decode(subm, SubmissionResource::new));
             } catch (org.apache.commons.lang3.SerializationException ex) {
                 log.debug("[graderId: '{}']: submission is not deserializable.", graderId);
                 throw new GrappaException(String.format("a submission for graderId '%s' was found in" +
@@ -341,24 +712,140 @@ public class RedisController {
 //        }
 //    }
 
-    public synchronized void setResponse(String gradeProcId, ResponseResource resp) {
+    /**
+     * Caches the response of a grading process, and announces it on the
+     * RESPONSE_CHANNEL to everyone waiting for it. Every gradeProcId attached
+     * to the grading process receives the same response.
+     * @param gradeProcId
+     * @param resp
+     * @return the attached gradeProcIds
+     */
+    public List<String> setResponse(String gradeProcId, ResponseResource resp) {
         log.debug("[GradeProcId: '{}']: setResponse(): {}", gradeProcId, resp);
         String respKey = RESPONSE_KEY_PREFIX.concat(gradeProcId);
-        set(respKey, SerializationUtils.serialize(resp), cacheConfig.getResponse_ttl_seconds());
+        List<String> attached = new ArrayList<>();
+        try (var jedis = jedisPool.getResource()) {
+            Object ids = SET_RESPONSE_SCRIPT.eval(jedis,
+                keys(respKey, TIMESTAMP_KEY_PREFIX.concat(respKey), GRADEPROCID_TO_INFLIGHTKEY_MAP.concat(gradeProcId)),
+                List.of(codec.encode(resp),
+                    SafeEncoder.encode(createTimestamp()),
+                    SafeEncoder.encode(String.valueOf(cacheConfig.getResponse_ttl_seconds())),
+                    SafeEncoder.encode(gradeProcId),
+                    SafeEncoder.encode(RESPONSE_CHANNEL),
+                    SafeEncoder.encode(RESPONSE_KEY_PREFIX),
+                    SafeEncoder.encode(TIMESTAMP_KEY_PREFIX),
+                    SafeEncoder.encode(ATTACHED_GRADEPROCIDS_PREFIX),
+                    SafeEncoder.encode(INFLIGHT_SUBMISSION_PREFIX)));
+            for (Object id : (List<?>) ids)
+                attached.add(SafeEncoder.encode((byte[]) id));
+        }
         log.debug("Response with gradeProcId '{}' set.", gradeProcId);
-        setTimestamp(respKey, cacheConfig.getResponse_ttl_seconds());
+        return attached;
     }
 
-    public synchronized ResponseResource getResponse(String gradeProcId) throws GrappaException {
-        log.debug("[GradeProcId: '{}']: getResponse()", gradeProcId);
+    /**
+     * Queues the first gradeProcId attached to a grading process that did not
+     * supply a response, e.g. because it has been cancelled, so the attached
+     * gradeProcIds are graded after all.
+     * @param graderId
+     * @param gradeProcId
+     * @return the queued gradeProcId, or null if nothing was attached
+     */
+    public String requeueAttachedSubmission(String graderId, String gradeProcId) {
         try (var jedis = jedisPool.getResource()) {
-            String sval= jedis.get(RESPONSE_KEY_PREFIX.concat(gradeProcId));
-            if (null == sval)
-                return null;
-            byte[] respBytes = decodeToBytes(sval);
+            Object queued = REQUEUE_ATTACHED_SCRIPT.eval(jedis,
+                keys(GRADEPROCID_TO_INFLIGHTKEY_MAP.concat(gradeProcId),
+                    SUBMISSION_QUEUE_SEQUENCE_PREFIX.concat(graderId),
+                    SUBMISSION_QUEUE_PREFIX.concat(graderId)),
+                List.of(SafeEncoder.encode(gradeProcId),
+                    SafeEncoder.encode(INFLIGHT_SUBMISSION_PREFIX),
+                    SafeEncoder.encode(ATTACHED_GRADEPROCIDS_PREFIX),
+                    SafeEncoder.encode(String.valueOf(cacheConfig.getSubmission_ttl_seconds()))));
+            return null == queued ? null : SafeEncoder.encode((byte[]) queued);
+        }
+    }
+
+    /**
+     * Subscribes to the RESPONSE_CHANNEL, so the listener is called with
+     * the gradeProcId of every response cached by any grappa instance.
+     *
+     * The subscription runs on a dedicated connection and thread, and is
+     * re-established whenever the connection to redis is lost, until
+     * shutdown() is called.
+     * @param listener
+     */
+    public synchronized void subscribeToResponses(Consumer<String> listener) {
+        if (null != responseSubscriber)
+            throw new IllegalStateException("Already subscribed to responses.");
+        responseSubscriber = new ResponseSubscriber(listener);
+        Thread t = new Thread(responseSubscriber, "redis-response-subscriber");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private class ResponseSubscriber extends JedisPubSub implements Runnable {
+        private final Consumer<String> listener;
+        private volatile boolean stopped = false;
+
+        ResponseSubscriber(Consumer<String> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            RedisConfig redisConfig = cacheConfig.getRedis();
+            while (!stopped) {
+                // A subscribed connection must never time out reading, since it may be
+                // idle for a long time
+                try (var jedis = new Jedis(redisConfig.getHost(), redisConfig.getPort(), Protocol.DEFAULT_TIMEOUT, 0)) {
+                    if (null != redisConfig.getPassword() && !redisConfig.getPassword().isEmpty())
+                        jedis.auth(redisConfig.getPassword());
+                    jedis.subscribe(this, RESPONSE_CHANNEL);
+                } catch (Exception e) {
+                    if (stopped)
+                        break;
+                    log.error("Subscription to channel '{}' lost, reconnecting...", RESPONSE_CHANNEL);
+                    log.error(e.getMessage());
+                    try {
+                        Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            log.info("Subscribed to channel '{}'.", channel);
+            if (stopped) // stopped while subscribing
+                unsubscribe();
+        }
+
+        @Override
+        public void onMessage(String channel, String gradeProcId) {
+            try {
+                listener.accept(gradeProcId);
+            } catch (Exception e) {
+                log.error(e.getMessage());
+                log.error(ExceptionUtils.getStackTrace(e));
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            if (isSubscribed())
+                unsubscribe();
+        }
+    }
+
+    public ResponseResource getResponse(String gradeProcId) throws GrappaException {
+        log.debug("[GradeProcId: '{}']: getResponse()", gradeProcId);
+        try {
+            byte[] respBytes = getBytes(RESPONSE_KEY_PREFIX.concat(gradeProcId));
             if (null == respBytes)
                 return null;
-            return SerializationUtils.deserialize(respBytes);
+            return codec.decode(respBytes, ResponseResource::new);
         } catch (org.apache.commons.lang3.SerializationException ex) {
             log.debug("[GradeProcId: '{}']: ProformaResponse is not deserializable.", gradeProcId);
             throw new GrappaException(String.format("gradeProcessId '%s' was found in" +
@@ -366,47 +853,127 @@ public class RedisController {
         }
     }
 
-    public synchronized long getSubmissionQueueSize(String graderId) {
+    public long getSubmissionQueueSize(String graderId) {
         log.debug("[GraderId: '{}']: getSubmissionQueueSize()", graderId);
         try (var jedis = jedisPool.getResource()) {
-            return jedis.llen(SUBMISSION_QUEUE_PREFIX.concat(graderId));
+            return jedis.zcard(SUBMISSION_QUEUE_PREFIX.concat(graderId));
         }
     }
 
-    public synchronized boolean isTaskCached(String taskUuid) {
+    /**
+     * @param taskUuid
+     * @return true, if the task last published under the uuid is cached
+     */
+    public boolean isTaskCached(String taskUuid) {
+        String taskHash = getString(TASKUUID_TO_TASKHASH_MAP.concat(taskUuid));
+        if (null != taskHash)
+            return isTaskContentCached(taskHash);
         return keyExists(TASK_KEY_PREFIX.concat(taskUuid));
     }
 
-    public synchronized void cacheTask(String taskUuid, TaskResource task) {
-        log.debug("[TaskUuid: '{}']: cacheTask(): {}", taskUuid, task);
-        String taskKey = TASK_KEY_PREFIX.concat(taskUuid);
-        set(taskKey, SerializationUtils.serialize(task), cacheConfig.getTask_ttl_seconds());
-        setTimestamp(taskKey, cacheConfig.getTask_ttl_seconds());
+    /**
+     * @param taskHash the hex encoded SHA-256 hash of the task bytes
+     * @return true, if a task with that very content is cached
+     */
+    public boolean isTaskContentCached(String taskHash) {
+        return keyExists(TASK_CONTENT_KEY_PREFIX.concat(taskHash));
     }
 
-    public synchronized TaskResource getCachedTask(String taskUuid) throws NotFoundException, GrappaException {
-        log.debug("[TaskUuid: '{}']: getCachedTask()", taskUuid);
+    /**
+     * Caches a task by its hash, and maps the task uuid to it.
+     * @param taskUuid
+     * @param taskHash the hex encoded SHA-256 hash of the task bytes
+     * @param task
+     */
+    public void cacheTask(String taskUuid, String taskHash, TaskResource task) {
+        log.debug("[TaskUuid: '{}']: cacheTask(): {}, hash {}", taskUuid, task, taskHash);
+        String taskKey = TASK_CONTENT_KEY_PREFIX.concat(taskHash);
+        List<byte[]> args = List.of(codec.encode(task),
+            SafeEncoder.encode(createTimestamp()),
+            SafeEncoder.encode(String.valueOf(cacheConfig.getTask_ttl_seconds())),
+            SafeEncoder.encode(taskHash));
         try (var jedis = jedisPool.getResource()) {
-            byte[] taskBytes = decodeToBytes(jedis.get(TASK_KEY_PREFIX.concat(taskUuid)));
-            if (null == taskBytes)
-                throw new NotFoundException(String.format("Task with uuid '%s' is not cached", taskUuid));
-            return SerializationUtils.deserialize(taskBytes);
+            Object prev = CACHE_TASK_SCRIPT.eval(jedis,
+                keys(taskKey, TIMESTAMP_KEY_PREFIX.concat(taskKey), TASKUUID_TO_TASKHASH_MAP.concat(taskUuid)), args);
+            checkTaskRemapped(taskUuid, taskHash, prev);
+        }
+    }
+
+    /**
+     * @param taskUuid
+     * @return the hash of the task last published under the uuid, or null if
+     * there is none, or the task has been cached by an earlier version of grappa
+     */
+    public String getAssociatedTaskHash(String taskUuid) {
+        return getString(TASKUUID_TO_TASKHASH_MAP.concat(taskUuid));
+    }
+
+    /**
+     * @return the task last published under the uuid
+     */
+    public TaskResource getCachedTask(String taskUuid) throws NotFoundException, GrappaException {
+        log.debug("[TaskUuid: '{}']: getCachedTask()", taskUuid);
+        String taskHash = getString(TASKUUID_TO_TASKHASH_MAP.concat(taskUuid));
+        byte[] taskBytes = getBytes(null != taskHash ? TASK_CONTENT_KEY_PREFIX.concat(taskHash)
+            : TASK_KEY_PREFIX.concat(taskUuid));
+        if (null == taskBytes)
+            throw new NotFoundException(String.format("Task with uuid '%s' is not cached", taskUuid));
+        return decodeTask(taskBytes, taskUuid);
+    }
+
+    /**
+     * @param taskHash the hex encoded SHA-256 hash of the task bytes
+     * @return the task with that very content
+     */
+    public TaskResource getCachedTaskContent(String taskHash) throws NotFoundException, GrappaException {
+        log.debug("[TaskHash: '{}']: getCachedTaskContent()", taskHash);
+        byte[] taskBytes = getBytes(TASK_CONTENT_KEY_PREFIX.concat(taskHash));
+        if (null == taskBytes)
+            throw new NotFoundException(String.format("Task with hash '%s' is not cached", taskHash));
+        return decodeTask(taskBytes, taskHash);
+    }
+
+    private TaskResource decodeTask(byte[] taskBytes, String taskId) throws GrappaException {
+        try {
+            return codec.decode(taskBytes, TaskResource::new);
         } catch (org.apache.commons.lang3.SerializationException ex) {
-            log.debug("[TaskUuid: '{}']: Task is not deserializable.", taskUuid);
-            throw new GrappaException(String.format("TaskUuid '%s' was found in" +
-                    " the cache but the task could not be restored - internal error.", taskUuid));
+            log.debug("[Task: '{}']: Task is not deserializable.", taskId);
+            throw new GrappaException(String.format("Task '%s' was found in" +
+                    " the cache but the task could not be restored - internal error.", taskId));
         }
     }
 
-    public synchronized void refreshTaskTimeout(String taskUuid) {
-        log.debug("[TaskUuid: '{}']: refreshing timeout for task", taskUuid);
+    /**
+     * Renews the TTL of a cached task, and maps the task uuid to it.
+     * @param taskUuid
+     * @param taskHash the hex encoded SHA-256 hash of the task bytes
+     * @return true, if the task is cached, false if it needs to be cached (again)
+     */
+    public boolean refreshTaskTimeout(String taskUuid, String taskHash) {
+        log.debug("[TaskUuid: '{}']: refreshing timeout for task with hash {}", taskUuid, taskHash);
+        String taskKey = TASK_CONTENT_KEY_PREFIX.concat(taskHash);
         try (var jedis = jedisPool.getResource()) {
-            String prefixedKey = TASK_KEY_PREFIX.concat(taskUuid);
-            if (1L != jedis.expire(prefixedKey,
-                cacheConfig.getTask_ttl_seconds())) {
-                // Setting the timeout may fail if the key already expired.
-                log.error("Setting timeout for key '{}' failed.", prefixedKey);
-            }
+            Object prev = REFRESH_TASK_SCRIPT.eval(jedis,
+                keys(taskKey, TIMESTAMP_KEY_PREFIX.concat(taskKey), TASKUUID_TO_TASKHASH_MAP.concat(taskUuid)),
+                List.of(SafeEncoder.encode(String.valueOf(cacheConfig.getTask_ttl_seconds())),
+                    SafeEncoder.encode(taskHash)));
+            if (Long.valueOf(0).equals(prev))
+                return false;
+            checkTaskRemapped(taskUuid, taskHash, prev);
+            return true;
+        }
+    }
+
+    /**
+     * Logs whether a task uuid has been mapped to a different task before.
+     * @param prev the result of a script mapping the uuid, i.e. the former hash or 1
+     */
+    private void checkTaskRemapped(String taskUuid, String taskHash, Object prev) {
+        if (prev instanceof byte[]) {
+            String prevHash = SafeEncoder.encode((byte[]) prev);
+            if (!prevHash.equals(taskHash))
+                log.warn("[TaskUuid: '{}']: A different task has been published under this uuid. The uuid now " +
+                    "refers to the task with hash '{}' instead of '{}'.", taskUuid, taskHash, prevHash);
         }
     }
 
@@ -422,11 +989,6 @@ public class RedisController {
             graderProcId));
     }
 
-    private void mapGraderProcIdToGraderId(String gradeProcId, String graderId) {
-        set(GRADEPROCID_TO_GRADERID_MAP.concat(gradeProcId), graderId,
-            cacheConfig.getSubmission_ttl_seconds());
-    }
-
     public String getAssociatedTaskUuid(String graderProcId) throws NotFoundException {
         String id = this.getString(GRADEPROCID_TO_TASKUUID_MAP.concat(graderProcId));
         if (null != id)
@@ -435,27 +997,55 @@ public class RedisController {
             graderProcId));
     }
 
-    private void mapGraderProcIdToTaskUuid(String gradeProcId, String taskUuid) {
-        set(GRADEPROCID_TO_TASKUUID_MAP.concat(gradeProcId), taskUuid,
-            cacheConfig.getSubmission_ttl_seconds());
+    public void setAssociatedResultKey(String gradeProcId, String resultKey) {
+        set(GRADEPROCID_TO_RESULTKEY_MAP.concat(gradeProcId), resultKey, cacheConfig.getSubmission_ttl_seconds());
+    }
+
+    /**
+     * @return the key of the grading result of the gradeProcId's submission, or null
+     * if the grader's results are not cached
+     */
+    public String getAssociatedResultKey(String gradeProcId) {
+        return getString(GRADEPROCID_TO_RESULTKEY_MAP.concat(gradeProcId));
+    }
+
+    public void setGradingResult(String resultKey, ResponseResource resp, long ttlSeconds) {
+        log.debug("[ResultKey: '{}']: setGradingResult(): {}", resultKey, resp);
+        setResource(GRADING_RESULT_KEY_PREFIX.concat(resultKey), resp, ttlSeconds);
     }
 
-    public synchronized void setTaskAverageGradingDurationSeconds(String taskUuid, long seconds) {
+    /**
+     * @return the cached grading result, or null if there is none
+     */
+    public ResponseResource getGradingResult(String resultKey) throws GrappaException {
+        byte[] respBytes = getBytes(GRADING_RESULT_KEY_PREFIX.concat(resultKey));
+        if (null == respBytes)
+            return null;
+        try {
+            return codec.decode(respBytes, ResponseResource::new);
+        } catch (org.apache.commons.lang3.SerializationException ex) {
+            log.debug("[ResultKey: '{}']: Grading result is not deserializable.", resultKey);
+            throw new GrappaException(String.format("Grading result '%s' was found in" +
+                " the cache but could not be restored - internal error.", resultKey));
+        }
+    }
+
+    public void setTaskAverageGradingDurationSeconds(String taskUuid, long seconds) {
         set(TASK_AVG_GRADING_DURATION_SECONDS_KEY_PREFIX.concat(taskUuid), String.valueOf(seconds),
             cacheConfig.getTask_ttl_seconds());
     }
 
-    public synchronized long getSubmissionAverageGradingDurationSeconds(String gradeProcId, long defaultSeconds) throws NotFoundException {
+    public long getSubmissionAverageGradingDurationSeconds(String gradeProcId, long defaultSeconds) throws NotFoundException {
         String taskUuid = getAssociatedTaskUuid(gradeProcId);
         return getTaskAverageGradingDurationSeconds(taskUuid, defaultSeconds);
     }
 
-    public synchronized long getTaskAverageGradingDurationSeconds(String taskUuid, long defaultValue) {
+    public long getTaskAverageGradingDurationSeconds(String taskUuid, long defaultValue) {
         String s = getString(TASK_AVG_GRADING_DURATION_SECONDS_KEY_PREFIX.concat(taskUuid));
         return s == null || s.isEmpty() ? defaultValue : Long.parseLong(s);
     }
 
-    private synchronized boolean keyExists(String key) {
+    private boolean keyExists(String key) {
         try (var jedis = jedisPool.getResource()) {
             return jedis.exists(key);
         }
@@ -464,70 +1054,60 @@ public class RedisController {
     // Don't use UTC time zone
     //private static final TimeZone tz = TimeZone.getTimeZone("UTC");
     //private static final DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'"); // Quoted "Z" to indicate UTC, no timezone offset
-    // Use localized time instead
-    private static final DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm");
+    // Use localized time instead. Unlike SimpleDateFormat, DateTimeFormatter is thread-safe.
+    private static final DateTimeFormatter df = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
 
-    /**
-     * Set a ISO 8601 timestamp for a key of another key/value pair chache entry.
-     */
-    private synchronized void setTimestamp(String key, long timeoutSeconds) {
-        set("timestamp:".concat(key), df.format(new Date()), timeoutSeconds);
-    }
+    private static final String TIMESTAMP_KEY_PREFIX = "timestamp:";
 
-    /**
-     * Sets a persistent key/value pair.
-     *
-     * @param key
-     * @param value
-     */
-    private synchronized void set(String key, byte[] value) {
-        String sval= encodeToString(value);
-        try (var jedis = jedisPool.getResource()) {
-            jedis.set(key, sval);
-        }
+    private static String createTimestamp() {
+        return df.format(LocalDateTime.now());
     }
 
-    private synchronized void set(String key, byte[] value, long timeoutSeconds) {
-        String sval= encodeToString(value);
-        try (var jedis = jedisPool.getResource()) {
-            SetParams sp= SetParams.setParams().ex(timeoutSeconds);
-            jedis.set(key, sval, sp);
-        }
+    public CompressionStatistics getCompressionStatistics() {
+        return codec.getStatistics();
     }
 
     /**
-     * Sets a persistent key/value pair.
-     *
-     * @param key
-     * @param value
+     * Stores a resource in its binary format (see ProformaResourceCodec).
      */
-    private synchronized void set(String key, String value) {
+    private void setResource(String key, ProformaResource resource, long timeoutSeconds) {
+        byte[] value = codec.encode(resource);
         try (var jedis = jedisPool.getResource()) {
-            jedis.set(key, value);
+            SetParams sp= SetParams.setParams().ex(timeoutSeconds);
+            jedis.set(SafeEncoder.encode(key), value, sp);
         }
     }
 
-    private synchronized void set(String key, String value, long timeoutSeconds) {
+    private void set(String key, String value, long timeoutSeconds) {
         try (var jedis = jedisPool.getResource()) {
             SetParams sp= SetParams.setParams().ex(timeoutSeconds);
             jedis.set(key, value, sp);
         }
     }
 
-    private synchronized void delete(String key) {
+    private void delete(String key) {
         try (var jedis = jedisPool.getResource()) {
             jedis.del(key);
         }
     }
 
-    private synchronized byte[] getByteArray(String key) {
+    private static List<byte[]> keys(String... keys) {
+        byte[][] bytes = new byte[keys.length][];
+        for (int i = 0; i < keys.length; ++i)
+            bytes[i] = SafeEncoder.encode(keys[i]);
+        return List.of(bytes);
+    }
+
+    /**
+     * @return the raw value of the key, or null if the key does not exist
+     */
+    private byte[] getBytes(String key) {
         try (var jedis = jedisPool.getResource()) {
-            String val= jedis.get(key);
-            return decodeToBytes(val);
+            return jedis.get(SafeEncoder.encode(key));
         }
     }
 
-    private synchronized String getString(String key) {
+    private String getString(String key) {
         try (var jedis = jedisPool.getResource()) {
             return jedis.get(key);
         }
@@ -541,20 +1121,4 @@ public class RedisController {
 //            throw new RuntimeException(e);
 //        }
 //    }
-    
-    
-    
-    private static String encodeToString(byte[] bytes) {
-        if (bytes == null) {
-            return null;
-        }
-        return base64Encoder.encodeToString(bytes);
-        //return new String(bytes, StandardCharsets.UTF_8);
-    }
-    
-    private static byte[] decodeToBytes(String str) {
-        if (str == null) return new byte[0];
-        return base64Decoder.decode(str);
-        //return str.getBytes(StandardCharsets.UTF_8);
-    }
 }
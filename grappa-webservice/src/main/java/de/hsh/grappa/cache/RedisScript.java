@@ -0,0 +1,33 @@
+package de.hsh.grappa.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.List;
+
+/**
+ * A Lua script that is executed atomically by redis.
+ *
+ * Scripts are called by their SHA1 digest, so the script body is only
+ * sent to redis once. If redis doesn't know the script (yet), e.g.
+ * after a restart, it is sent in full and cached by redis again.
+ */
+final class RedisScript {
+    private final byte[] script;
+    private final byte[] sha1;
+
+    RedisScript(String script) {
+        this.script = SafeEncoder.encode(script);
+        this.sha1 = SafeEncoder.encode(DigestUtils.sha1Hex(script));
+    }
+
+    Object eval(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedis.evalsha(sha1, keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(script, keys, args);
+        }
+    }
+}
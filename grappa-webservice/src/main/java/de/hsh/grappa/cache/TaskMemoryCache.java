@@ -0,0 +1,122 @@
+package de.hsh.grappa.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import de.hsh.grappa.config.CacheConfig;
+import de.hsh.grappa.proforma.TaskWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process cache of tasks in front of redis, so hot tasks are neither
+ * fetched from redis nor parsed again for every submission referencing them.
+ *
+ * Tasks are cached by their hash (see RedisController), i.e. by their
+ * content. A cached task therefore never gets stale: a changed task published
+ * under a reused uuid has a different hash, which is looked up in redis.
+ *
+ * The cache is bounded by the total size of the task bytes, and entries
+ * expire after the task TTL. Concurrent requests for the same missing task
+ * load it only once.
+ *
+ * This class is safe for concurrent use.
+ */
+public class TaskMemoryCache {
+    private static final Logger log = LoggerFactory.getLogger(TaskMemoryCache.class);
+
+    private static TaskMemoryCache instance = new TaskMemoryCache();
+    private volatile Cache<String, TaskWrapper> cache = null;
+    private final AtomicLong weightedBytes = new AtomicLong();
+
+    private TaskMemoryCache() {
+    }
+
+    public static TaskMemoryCache getInstance() {
+        return instance;
+    }
+
+    public synchronized void init(CacheConfig cc) {
+        long maxBytes = cc.getTask_memory_cache_max_bytes();
+        if (maxBytes <= 0) {
+            log.info("In-memory task cache is disabled.");
+            cache = null;
+            return;
+        }
+        RemovalListener<String, TaskWrapper> onRemoval = n -> weightedBytes.addAndGet(-weigh(n.getValue()));
+        cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String taskHash, TaskWrapper task) -> weigh(task))
+            .expireAfterWrite(cc.getTask_ttl_seconds(), TimeUnit.SECONDS)
+            .removalListener(onRemoval)
+            .recordStats()
+            .build();
+        log.info("In-memory task cache holds up to {} bytes.", maxBytes);
+    }
+
+    /**
+     * @param taskHash the hex encoded SHA-256 hash of the task bytes
+     * @param loader loads the task on a miss, e.g. from redis
+     * @return the cached or the loaded task
+     * @throws Exception any exception thrown by the loader
+     */
+    public TaskWrapper get(String taskHash, Callable<TaskWrapper> loader) throws Exception {
+        Cache<String, TaskWrapper> c = cache;
+        if (null == c)
+            return loader.call();
+        try {
+            return c.get(taskHash, () -> {
+                TaskWrapper task = loader.call();
+                weightedBytes.addAndGet(weigh(task));
+                return task;
+            });
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Caches a task, unless a task with the same hash is cached already.
+     * @param taskHash the hex encoded SHA-256 hash of the task bytes
+     * @param task
+     */
+    public void put(String taskHash, TaskWrapper task) {
+        Cache<String, TaskWrapper> c = cache;
+        if (null != c && null == c.asMap().putIfAbsent(taskHash, task))
+            weightedBytes.addAndGet(weigh(task));
+    }
+
+    /**
+     * @return hit, miss, load and eviction counts, all 0 if the cache is disabled
+     */
+    public CacheStats getStats() {
+        Cache<String, TaskWrapper> c = cache;
+        return null == c ? new CacheStats(0, 0, 0, 0, 0, 0) : c.stats();
+    }
+
+    public long getSize() {
+        Cache<String, TaskWrapper> c = cache;
+        return null == c ? 0 : c.size();
+    }
+
+    /**
+     * @return the total size of the cached task bytes
+     */
+    public long getSizeBytes() {
+        return weightedBytes.get();
+    }
+
+    private static int weigh(TaskWrapper task) {
+        return task.getProformaTaskResource().getContent().length;
+    }
+}
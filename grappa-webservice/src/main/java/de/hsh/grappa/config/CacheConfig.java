@@ -4,7 +4,9 @@ public class CacheConfig {
     private long submission_ttl_seconds;
     private long task_ttl_seconds;
     private long response_ttl_seconds;
+    private long task_memory_cache_max_bytes = 64 * 1024 * 1024;
     private RedisConfig redis;
+    private CompressionConfig compression = new CompressionConfig();
 
     public long getSubmission_ttl_seconds() {
         return submission_ttl_seconds;
@@ -30,6 +32,14 @@ public class CacheConfig {
         this.response_ttl_seconds = response_ttl_seconds;
     }
 
+    public long getTask_memory_cache_max_bytes() {
+        return task_memory_cache_max_bytes;
+    }
+
+    public void setTask_memory_cache_max_bytes(long task_memory_cache_max_bytes) {
+        this.task_memory_cache_max_bytes = task_memory_cache_max_bytes;
+    }
+
     public RedisConfig getRedis() {
         return redis;
     }
@@ -38,13 +48,23 @@ public class CacheConfig {
         this.redis = redis;
     }
 
+    public CompressionConfig getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionConfig compression) {
+        this.compression = compression;
+    }
+
     @Override
     public String toString() {
         return "Cache{" +
             "submission_ttl_seconds=" + submission_ttl_seconds +
             ", task_ttl_seconds=" + task_ttl_seconds +
             ", response_ttl_seconds=" + response_ttl_seconds +
+            ", task_memory_cache_max_bytes=" + task_memory_cache_max_bytes +
             ", redis=" + redis +
+            ", compression=" + compression +
             '}';
     }
 }
@@ -0,0 +1,40 @@
+package de.hsh.grappa.config;
+
+public class CompressionConfig {
+    private boolean enabled = true;
+    private int min_size_bytes = 1024;
+    private int level = 1;
+
+    public boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMin_size_bytes() {
+        return min_size_bytes;
+    }
+
+    public void setMin_size_bytes(int min_size_bytes) {
+        this.min_size_bytes = min_size_bytes;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String toString() {
+        return "Compression{" +
+            "enabled=" + enabled +
+            ", min_size_bytes=" + min_size_bytes +
+            ", level=" + level +
+            '}';
+    }
+}
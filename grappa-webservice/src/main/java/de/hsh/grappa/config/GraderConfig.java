@@ -10,6 +10,9 @@ public class GraderConfig {
   private String config_path;
   private int timeout_seconds = 120;
   private int concurrent_grading_processes = 5;
+  private int spare_grading_threads = 10;
+  private long result_cache_ttl_seconds = 0;
+  private boolean nondeterministic = false;
 
   public String getId() {
     return id;
@@ -79,6 +82,30 @@ public class GraderConfig {
     this.concurrent_grading_processes = concurrent_grading_processes;
   }
 
+  public int getSpare_grading_threads() {
+    return spare_grading_threads;
+  }
+
+  public void setSpare_grading_threads(int spare_grading_threads) {
+    this.spare_grading_threads = spare_grading_threads;
+  }
+
+  public long getResult_cache_ttl_seconds() {
+    return result_cache_ttl_seconds;
+  }
+
+  public void setResult_cache_ttl_seconds(long result_cache_ttl_seconds) {
+    this.result_cache_ttl_seconds = result_cache_ttl_seconds;
+  }
+
+  public boolean getNondeterministic() {
+    return nondeterministic;
+  }
+
+  public void setNondeterministic(boolean nondeterministic) {
+    this.nondeterministic = nondeterministic;
+  }
+
   @Override
   public String toString() {
     return "Grader{" +
@@ -91,6 +118,9 @@ public class GraderConfig {
             ", config_path='" + config_path + '\'' +
             ", max_runtime_seconds=" + timeout_seconds +
             ", max_concurrent_grade_processes=" + concurrent_grading_processes +
+            ", spare_grading_threads=" + spare_grading_threads +
+            ", result_cache_ttl_seconds=" + result_cache_ttl_seconds +
+            ", nondeterministic=" + nondeterministic +
             '}';
   }
 }
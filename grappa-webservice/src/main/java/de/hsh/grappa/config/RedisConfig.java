@@ -5,6 +5,8 @@ public class RedisConfig {
   private int port;
   //@JsonIgnore
   private String password;
+  private int max_connections = 16;
+  private int min_idle_connections = 4;
 
   public String getHost() {
     return host;
@@ -30,11 +32,29 @@ public class RedisConfig {
     this.password = password;
   }
 
+  public int getMax_connections() {
+    return max_connections;
+  }
+
+  public void setMax_connections(int max_connections) {
+    this.max_connections = max_connections;
+  }
+
+  public int getMin_idle_connections() {
+    return min_idle_connections;
+  }
+
+  public void setMin_idle_connections(int min_idle_connections) {
+    this.min_idle_connections = min_idle_connections;
+  }
+
   @Override
   public String toString() {
     return "Redis{" +
             "host='" + host + '\'' +
             ", port=" + port +
+            ", max_connections=" + max_connections +
+            ", min_idle_connections=" + min_idle_connections +
             '}';
   }
 }
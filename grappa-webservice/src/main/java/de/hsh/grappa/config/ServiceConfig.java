@@ -5,6 +5,9 @@ public class ServiceConfig {
     private int prev_grading_seconds_max_list_size = 10;
     private String logging_level;
     private int synchronous_submission_timeout_seconds = 600;
+    private int max_poll_wait_seconds = 60;
+    private int status_event_interval_seconds = 5;
+    private String execution_mode = "platform";
     private String default_grading_environment_setup_class_path;
     private String default_grading_environment_setup_class_name;
 
@@ -32,6 +35,30 @@ public class ServiceConfig {
         this.synchronous_submission_timeout_seconds = synchronous_submission_timeout_seconds;
     }
 
+    public int getMax_poll_wait_seconds() {
+        return max_poll_wait_seconds;
+    }
+
+    public void setMax_poll_wait_seconds(int max_poll_wait_seconds) {
+        this.max_poll_wait_seconds = max_poll_wait_seconds;
+    }
+
+    public int getStatus_event_interval_seconds() {
+        return status_event_interval_seconds;
+    }
+
+    public void setStatus_event_interval_seconds(int status_event_interval_seconds) {
+        this.status_event_interval_seconds = status_event_interval_seconds;
+    }
+
+    public String getExecution_mode() {
+        return execution_mode;
+    }
+
+    public void setExecution_mode(String execution_mode) {
+        this.execution_mode = execution_mode;
+    }
+
     public int getDefault_estimated_grading_seconds() {
         return default_estimated_grading_seconds;
     }
@@ -63,6 +90,9 @@ public class ServiceConfig {
             ", prev_grading_seconds_max_list_size=" + prev_grading_seconds_max_list_size +
             ", logging_level='" + logging_level + '\'' +
             ", synchronous_submission_timeout_seconds=" + synchronous_submission_timeout_seconds +
+            ", max_poll_wait_seconds=" + max_poll_wait_seconds +
+            ", status_event_interval_seconds=" + status_event_interval_seconds +
+            ", execution_mode='" + execution_mode + '\'' +
             ", default_grading_environment_setup_class_path='" + default_grading_environment_setup_class_path + '\'' +
             ", default_grading_environment_setup_class_name='" + default_grading_environment_setup_class_name + '\'' +
             '}';
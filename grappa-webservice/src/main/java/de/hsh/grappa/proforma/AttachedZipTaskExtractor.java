@@ -3,21 +3,18 @@ package de.hsh.grappa.proforma;
 import de.hsh.grappa.utils.Zip;
 import org.apache.commons.io.FilenameUtils;
 import proforma.ProformaSubmissionZipPathes;
-import proforma.xml.IncludedTaskFileType;
-
-import java.io.ByteArrayInputStream;
 
 /**
  * Retrieves an attached task ZIP file from a submission.
  */
 public class AttachedZipTaskExtractor extends TaskExtractor {
-    private proforma.xml.SubmissionType concreteSubmPojo;
+    private TaskReference taskReference;
     private SubmissionWrapper submissionWrapper;
     private TaskWrapper taskWrapper;
 
-    public AttachedZipTaskExtractor(proforma.xml.SubmissionType concreteSubmPojo,
+    public AttachedZipTaskExtractor(TaskReference taskReference,
                                     SubmissionWrapper submissionWrapper) {
-        this.concreteSubmPojo = concreteSubmPojo;
+        this.taskReference = taskReference;
         // An attached zip task file comes only in a zipped submission
         if(!submissionWrapper.getProformasubmissionResource().getMimeType().equals(MimeType.ZIP))
             throw new IllegalArgumentException("ProformaSubmission is not a ZIP archive.");
@@ -29,17 +26,11 @@ public class AttachedZipTaskExtractor extends TaskExtractor {
         if(null != taskWrapper)
             return taskWrapper;
 
-        IncludedTaskFileType included = concreteSubmPojo.getIncludedTaskFile();
-        if(null == included)
-            throw new IllegalArgumentException();
-
-        String filePath = included.getAttachedZipFile();
+        String filePath = taskReference.getValue();
         String taskZipPath = FilenameUtils.concat(ProformaSubmissionZipPathes.TASK_DIRECTORY, filePath);
-        byte[] taskZipFileBytes = Zip.getFileFromZip(submissionWrapper.getProformasubmissionResource().getContent(),
-            taskZipPath);
-        ByteArrayInputStream taskZipFileInputStream = new ByteArrayInputStream(taskZipFileBytes);
+        byte[] taskZipFileBytes = submissionWrapper.getZip().getFile(taskZipPath);
 
-        byte[] taskBytes = Zip.getFileFromZip(taskZipFileInputStream, ProformaSubmissionZipPathes.TASK_XML_FILE_NAME);
+        byte[] taskBytes = Zip.getFileFromZip(taskZipFileBytes, ProformaSubmissionZipPathes.TASK_XML_FILE_NAME);
         //String taskXml = new String(taskXmlBytes, StandardCharsets.UTF_8);
 
         // MimeType.XML, because the task.xml has already been retrieved
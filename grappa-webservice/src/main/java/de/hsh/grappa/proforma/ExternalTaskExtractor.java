@@ -2,10 +2,11 @@ package de.hsh.grappa.proforma;
 
 import com.google.common.base.Strings;
 import de.hsh.grappa.cache.RedisController;
+import de.hsh.grappa.cache.TaskMemoryCache;
 import de.hsh.grappa.exceptions.BadRequestException;
 import de.hsh.grappa.exceptions.GrappaException;
 import de.hsh.grappa.exceptions.NotFoundException;
-import proforma.xml.SubmissionType;
+import org.apache.commons.codec.digest.DigestUtils;
 
 /**
  * This class downloads a task resource from a task repository.
@@ -14,23 +15,37 @@ import proforma.xml.SubmissionType;
  * This class is called [..]Extractor for the sake of its base class,
  * but calling it ExternalTaskDownloader would make more
  * sense in terms of what it does.
+ *
+ * A task cached by the middleware is referenced either by an empty
+ * task repository url and the task uuid, or by the url
+ * 'task-content:' followed by the hash of the task (see
+ * RedisController).
  */
 public class ExternalTaskExtractor extends TaskExtractor {
-    private SubmissionType concreteSubmPojo;
+    private static final String TASK_CONTENT_URL_PREFIX = "task-content:";
+
+    private TaskReference taskReference;
     private SubmissionWrapper submissionWrapper;
     private TaskWrapper taskWrapper;
 
-    public ExternalTaskExtractor(SubmissionType concreteSubmPojo,
+    public ExternalTaskExtractor(TaskReference taskReference,
                                  SubmissionWrapper submissionWrapper) {
-        this.concreteSubmPojo = concreteSubmPojo;
+        this.taskReference = taskReference;
         // An attached xml task file comes only in a zipped submission
         this.submissionWrapper = submissionWrapper;
     }
 
     @Override
     public TaskWrapper getTask() throws Exception {
-        String taskUuid = concreteSubmPojo.getExternalTask().getUuid();
-        String taskRepoUrl = concreteSubmPojo.getExternalTask().getUri();
+        // Download and unmarshal the task only once per submission
+        if (null == taskWrapper)
+            taskWrapper = retrieveTask();
+        return taskWrapper;
+    }
+
+    private TaskWrapper retrieveTask() throws Exception {
+        String taskUuid = taskReference.getUuid();
+        String taskRepoUrl = taskReference.getValue();
         if (Strings.isNullOrEmpty(taskRepoUrl)) {
             if (Strings.isNullOrEmpty(taskUuid))
                 throw new BadRequestException("Neither the task repository url nor the task uuid have been " +
@@ -38,20 +53,39 @@ public class ExternalTaskExtractor extends TaskExtractor {
 
             // If the task repo url is empty and the taskuuid is set, try getting the task from cache
             try {
+                String taskHash = RedisController.getInstance().getAssociatedTaskHash(taskUuid);
+                if (null != taskHash)
+                    return getCachedTaskContent(taskHash);
+                // cached by an earlier version of grappa
                 TaskResource task = RedisController.getInstance().getCachedTask(taskUuid);
                 return new TaskWrapperImpl(task);
             } catch (NotFoundException e) {
                 throw new NotFoundException(String.format("The task uuid '%s' specified in the external task element " +
                     "(with the task repo url being empty) is not cached by the middleware.", taskUuid), e);
             }
+        } else if (taskRepoUrl.startsWith(TASK_CONTENT_URL_PREFIX)) {
+            String taskHash = taskRepoUrl.substring(TASK_CONTENT_URL_PREFIX.length()).toLowerCase();
+            try {
+                return getCachedTaskContent(taskHash);
+            } catch (NotFoundException e) {
+                throw new NotFoundException(String.format("The task with hash '%s' specified in the external task " +
+                    "element is not cached by the middleware.", taskHash), e);
+            }
         } else {
             try {
-                TaskResource ts = new ResourceDownloader().downloadTaskResource(taskRepoUrl);
-                return new TaskWrapperImpl(ts);
+                TaskResource ts = ResourceDownloader.getInstance().downloadTaskResource(taskRepoUrl);
+                // An unchanged download is read only once
+                return TaskMemoryCache.getInstance().get(DigestUtils.sha256Hex(ts.getContent()),
+                    () -> new TaskWrapperImpl(ts));
             } catch (Exception e) {
                 throw new GrappaException(String.format("Downloading external task resource failed: %s",
                     taskRepoUrl), e);
             }
         }
     }
+
+    private static TaskWrapper getCachedTaskContent(String taskHash) throws Exception {
+        return TaskMemoryCache.getInstance().get(taskHash,
+            () -> new TaskWrapperImpl(RedisController.getInstance().getCachedTaskContent(taskHash)));
+    }
 }
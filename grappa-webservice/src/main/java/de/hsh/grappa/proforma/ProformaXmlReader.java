@@ -0,0 +1,183 @@
+package de.hsh.grappa.proforma;
+
+import javax.xml.bind.annotation.XmlSchema;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.TreeSet;
+
+/**
+ * Reads the few values needed to take on a submission straight from the
+ * proforma xml, without binding the whole document to POJOs.
+ *
+ * Task and submission files may embed large files, tests and model
+ * solutions, but the values read here are found at the very beginning
+ * of the document. Reading stops as soon as they have been found.
+ */
+public class ProformaXmlReader {
+    /**
+     * The namespace of the proforma version supported by the proformaxml module
+     */
+    public static final String PROFORMA_NAMESPACE = proforma.xml.SubmissionType.class.getPackage()
+        .getAnnotation(XmlSchema.class).namespace();
+
+    private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private ProformaXmlReader() {}
+
+    /**
+     * @param taskXml a task xml file
+     * @return the uuid attribute of the task element, or null if it isn't set
+     * @throws IllegalArgumentException if the root element is not a task
+     */
+    public static String readTaskUuid(byte[] taskXml) throws XMLStreamException {
+        XMLStreamReader r = factory.createXMLStreamReader(new ByteArrayInputStream(taskXml));
+        try {
+            r.nextTag();
+            requireRoot(r, "task");
+            return r.getAttributeValue(null, "uuid");
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * @param submissionXml a submission xml file
+     * @return the reference to the task of the submission
+     * @throws IllegalArgumentException if the root element is not a submission, or the
+     * submission doesn't reference a task
+     */
+    public static TaskReference readTaskReference(byte[] submissionXml) throws XMLStreamException {
+        XMLStreamReader r = factory.createXMLStreamReader(new ByteArrayInputStream(submissionXml));
+        try {
+            r.nextTag();
+            requireRoot(r, "submission");
+            String namespace = r.getNamespaceURI();
+            // the task reference is the first child element of the submission
+            r.nextTag();
+            switch (r.getLocalName()) {
+                case "external-task":
+                    return new TaskReference(namespace, TaskReference.Kind.EXTERNAL_TASK,
+                        r.getAttributeValue(null, "uuid"), readChildElementText(r, "uri"));
+                case "included-task-file":
+                    return readIncludedTaskFile(r, namespace);
+                case "task":
+                    return new TaskReference(namespace, TaskReference.Kind.TASK,
+                        r.getAttributeValue(null, "uuid"), null);
+                default:
+                    throw new IllegalArgumentException("Unknown task element in submission");
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Feeds the content of a submission xml file into a digest, so that submissions differing
+     * only in the data of the submitting student or in formatting result in the same digest.
+     *
+     * The lms element, which holds the user id and the submission time, is left out. So are
+     * the xml declaration, namespace prefixes, comments, the order of attributes and whitespace
+     * between elements.
+     * @param submissionXml a submission xml file
+     * @param digest the digest to update
+     */
+    public static void digestSubmission(byte[] submissionXml, MessageDigest digest) throws XMLStreamException {
+        XMLStreamReader r = factory.createXMLStreamReader(new ByteArrayInputStream(submissionXml));
+        try {
+            int depth = 0;
+            int skipDepth = 0; // > 0 within the lms element
+            while (r.hasNext()) {
+                int event = r.next();
+                if (XMLStreamConstants.START_ELEMENT == event) {
+                    if (skipDepth > 0 || (1 == depth && "lms".equals(r.getLocalName()))) {
+                        ++skipDepth;
+                        continue;
+                    }
+                    ++depth;
+                    update(digest, "<{" + r.getNamespaceURI() + "}" + r.getLocalName());
+                    TreeSet<String> attributes = new TreeSet<>();
+                    for (int i = 0; i < r.getAttributeCount(); ++i)
+                        attributes.add("{" + r.getAttributeNamespace(i) + "}" + r.getAttributeLocalName(i) + "=" +
+                            r.getAttributeValue(i));
+                    for (String a : attributes)
+                        update(digest, a);
+                } else if (XMLStreamConstants.END_ELEMENT == event) {
+                    if (skipDepth > 0) {
+                        --skipDepth;
+                        continue;
+                    }
+                    --depth;
+                    update(digest, ">");
+                } else if ((XMLStreamConstants.CHARACTERS == event || XMLStreamConstants.CDATA == event)
+                    && 0 == skipDepth && !r.isWhiteSpace()) {
+                    digest.update(r.getText().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    private static void update(MessageDigest digest, String token) {
+        digest.update((byte) 0);
+        digest.update(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static TaskReference readIncludedTaskFile(XMLStreamReader r, String namespace)
+        throws XMLStreamException {
+        String uuid = r.getAttributeValue(null, "uuid");
+        r.nextTag();
+        if (r.isEndElement())
+            throw new IllegalArgumentException("Unknown IncludedTaskFileType");
+        switch (r.getLocalName()) {
+            case "embedded-zip-file":
+                return new TaskReference(namespace, TaskReference.Kind.EMBEDDED_ZIP_FILE, uuid, null);
+            case "embedded-xml-file":
+                return new TaskReference(namespace, TaskReference.Kind.EMBEDDED_XML_FILE, uuid, null);
+            case "attached-zip-file":
+                return new TaskReference(namespace, TaskReference.Kind.ATTACHED_ZIP_FILE, uuid,
+                    r.getElementText().trim());
+            case "attached-xml-file":
+                return new TaskReference(namespace, TaskReference.Kind.ATTACHED_XML_FILE, uuid,
+                    r.getElementText().trim());
+            default:
+                throw new IllegalArgumentException("Unknown IncludedTaskFileType");
+        }
+    }
+
+    /**
+     * Reads the text of a direct child element of the current element.
+     * @return the text, or null if there is no such child element
+     */
+    private static String readChildElementText(XMLStreamReader r, String localName) throws XMLStreamException {
+        int depth = 0;
+        while (r.hasNext()) {
+            int event = r.next();
+            if (XMLStreamConstants.START_ELEMENT == event) {
+                if (0 == depth && localName.equals(r.getLocalName()))
+                    return r.getElementText().trim();
+                ++depth;
+            } else if (XMLStreamConstants.END_ELEMENT == event) {
+                if (0 == depth--)
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    private static void requireRoot(XMLStreamReader r, String localName) {
+        if (!localName.equals(r.getLocalName()))
+            throw new IllegalArgumentException(String.format("Expected a proforma %s, but the root element " +
+                "is '%s'.", localName, r.getLocalName()));
+    }
+}
@@ -1,49 +1,222 @@
 package de.hsh.grappa.proforma;
 
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import de.hsh.grappa.exceptions.GrappaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class handles external-task and external-submission
  * resources. (Refer to the Proforma whitepaper for more information.)
+ *
+ * Resources are downloaded with a single request through a shared
+ * HTTP client, which keeps connections to task repositories open for
+ * reuse. Downloads carrying an ETag or a Last-Modified header are kept in
+ * memory, and are only revalidated by a conditional request later on,
+ * once they are older than the max-age the repository allows. Downloads
+ * the repository marks as no-store are never kept.
+ * Concurrent downloads of the same url are merged into one request.
+ *
+ * This class is safe for concurrent use.
  */
 public class ResourceDownloader {
+    private static final Logger log = LoggerFactory.getLogger(ResourceDownloader.class);
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final long MAX_CACHED_BYTES = 64 * 1024 * 1024;
+
+    private static ResourceDownloader instance = new ResourceDownloader();
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .connectTimeout(CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
+    private final Cache<String, Download> downloads = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_CACHED_BYTES)
+        .weigher((String url, Download d) -> d.bytes.length)
+        .build();
+    private final ConcurrentHashMap<String, CompletableFuture<Download>> inFlight = new ConcurrentHashMap<>();
+
+    private static class Download {
+        private final MimeType mimeType;
+        private final byte[] bytes;
+        private final String etag;
+        private final String lastModified;
+        private final long freshUntilNanos;
+
+        Download(MimeType mimeType, byte[] bytes, String etag, String lastModified, long maxAgeSeconds) {
+            this.mimeType = mimeType;
+            this.bytes = bytes;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntilNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(maxAgeSeconds);
+        }
+
+        boolean isFresh() {
+            return System.nanoTime() - freshUntilNanos < 0;
+        }
+
+        Download revalidated(long maxAgeSeconds) {
+            return new Download(mimeType, bytes, etag, lastModified, maxAgeSeconds);
+        }
+    }
+
+    private ResourceDownloader() {
+    }
+
+    public static ResourceDownloader getInstance() {
+        return instance;
+    }
+
     public TaskResource downloadTaskResource(String url) throws Exception {
-        MimeType mt = getMimeType(url);
-        byte[] bytes = downloadResource(url);
-        return new TaskResource(bytes, mt);
+        Download d = download(url);
+        return new TaskResource(d.bytes, d.mimeType);
     }
 
     public SubmissionResource downloadSubmissionResource(String url) throws Exception {
-        MimeType mt = getMimeType(url);
-        byte[] bytes = downloadResource(url);
-        return new SubmissionResource(bytes, mt);
-    }
-
-    public MimeType getMimeType(String link) throws Exception {
-        URL url = new URL(link);
-        URLConnection conn = url.openConnection();
-        String contentType = conn.getContentType();
-        MimeType mt;
-        if(contentType.equals("application/zip"))
-            mt = MimeType.ZIP;
-        else if(contentType.equals("application/xml"))
-            mt = MimeType.XML;
+        Download d = download(url);
+        return new SubmissionResource(d.bytes, d.mimeType);
+    }
+
+    /**
+     * Downloads a resource, unless a download of the same url is already
+     * running, in which case its result is shared.
+     */
+    private Download download(String url) throws Exception {
+        CompletableFuture<Download> future = new CompletableFuture<>();
+        CompletableFuture<Download> running = inFlight.putIfAbsent(url, future);
+        if (null != running) {
+            log.debug("Waiting for the running download of '{}'.", url);
+            try {
+                return running.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception)
+                    throw (Exception) e.getCause();
+                throw e;
+            }
+        }
+        try {
+            Download d = fetch(url);
+            future.complete(d);
+            return d;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(url, future);
+        }
+    }
+
+    private Download fetch(String url) throws Exception {
+        URI uri = new URI(url);
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme()))
+            return fetchUrlConnection(url);
+
+        Download cached = downloads.getIfPresent(url);
+        if (null != cached && cached.isFresh())
+            return cached;
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET();
+        if (null != cached) {
+            if (null != cached.etag)
+                request.header("If-None-Match", cached.etag);
+            if (null != cached.lastModified)
+                request.header("If-Modified-Since", cached.lastModified);
+        }
+        HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        var headers = response.headers();
+        String cacheControl = String.join(",", headers.allValues("Cache-Control"));
+        long maxAgeSeconds = getMaxAgeSeconds(cacheControl);
+        boolean noStore = isNoStore(cacheControl);
+        if (304 == response.statusCode() && null != cached) {
+            log.debug("'{}' has not been modified, using the cached download.", url);
+            Download revalidated = cached.revalidated(maxAgeSeconds);
+            if (noStore)
+                downloads.invalidate(url);
+            else
+                downloads.put(url, revalidated);
+            return revalidated;
+        }
+        if (200 != response.statusCode())
+            throw new GrappaException(String.format("Downloading '%s' failed with HTTP status %d.", url,
+                response.statusCode()));
+
+        Download d = new Download(toMimeType(headers.firstValue("Content-Type").orElse(null)), response.body(),
+            headers.firstValue("ETag").orElse(null), headers.firstValue("Last-Modified").orElse(null), maxAgeSeconds);
+        if (!noStore && (null != d.etag || null != d.lastModified || maxAgeSeconds > 0))
+            downloads.put(url, d);
         else
-            throw new GrappaException(String.format("Unsupported mime type '%s' of proforma resource.",
-                contentType));
-        return mt;
+            downloads.invalidate(url);
+        log.debug("Downloaded {} bytes from '{}'.", d.bytes.length, url);
+        return d;
     }
 
-    private byte[] downloadResource(String url) throws Exception {
-        URL website = new URL(url);
-        byte[] bytes;
-        try (InputStream in = website.openStream()) {
-            return in.readAllBytes();
+    /**
+     * Downloads a resource of any other url scheme, such as file urls.
+     */
+    private static Download fetchUrlConnection(String url) throws Exception {
+        URLConnection conn = new URL(url).openConnection();
+        conn.setConnectTimeout((int) CONNECT_TIMEOUT.toMillis());
+        conn.setReadTimeout((int) REQUEST_TIMEOUT.toMillis());
+        try (InputStream in = conn.getInputStream()) {
+            return new Download(toMimeType(conn.getContentType()), in.readAllBytes(), null, null, 0);
         }
     }
+
+    /**
+     * @return true, if a Cache-Control header forbids keeping the response
+     */
+    private static boolean isNoStore(String cacheControl) {
+        for (String directive : cacheControl.split(",")) {
+            if (directive.trim().equalsIgnoreCase("no-store"))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the max-age of a Cache-Control header, or 0 if the response must be revalidated
+     */
+    private static long getMaxAgeSeconds(String cacheControl) {
+        long maxAge = 0;
+        for (String directive : cacheControl.split(",")) {
+            String d = directive.trim().toLowerCase();
+            if (d.equals("no-cache") || d.equals("no-store"))
+                return 0;
+            if (d.startsWith("max-age=")) {
+                try {
+                    maxAge = Math.max(0, Long.parseLong(d.substring("max-age=".length()).replace("\"", "")));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    private static MimeType toMimeType(String contentType) throws GrappaException {
+        // Ignore any parameters, such as the charset
+        String mediaType = null == contentType ? "" : contentType.split(";")[0].trim();
+        if (mediaType.equalsIgnoreCase("application/zip"))
+            return MimeType.ZIP;
+        else if (mediaType.equalsIgnoreCase("application/xml"))
+            return MimeType.XML;
+        throw new GrappaException(String.format("Unsupported mime type '%s' of proforma resource.",
+            contentType));
+    }
 }
@@ -1,28 +1,67 @@
 package de.hsh.grappa.proforma;
 
-import com.google.common.base.Charsets;
 import de.hsh.grappa.utils.XmlUtils;
-import de.hsh.grappa.utils.Zip;
+import de.hsh.grappa.utils.ZipView;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import proforma.ProformaSubmissionZipPathes;
 import proforma.xml.AbstractSubmissionType;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * A wrapper class for a SubmissionResource.
  * A SubmissionResource comes in form of a ZIP or a bare-bone
  * XML file. This class extracts all necessary data required
  * for further processing (caching of task information) and
  * grading.
+ *
+ * Taking on a submission only requires the reference to its task,
+ * so the submission xml is bound to POJOs only when they are
+ * actually asked for.
+ *
+ * A zipped submission is opened once, and all files are read from that
+ * same view, so the wrapper must be closed after use.
  */
-public abstract class SubmissionWrapper {
+public abstract class SubmissionWrapper implements Closeable {
     private SubmissionResource submissionResource;
+    private final ZipView zip;
+    private final TaskReference taskReference;
     private AbstractSubmissionType abstractSubmPojo;
     private TaskExtractor taskRetriever;
 
 
     public SubmissionWrapper(SubmissionResource submissionResource) throws Exception {
+        this(submissionResource, openZip(submissionResource));
+    }
+
+    private SubmissionWrapper(SubmissionResource submissionResource, ZipView zip) throws Exception {
+        this(submissionResource, zip, readTaskReference(submissionResource, zip));
+    }
+
+    /**
+     * @param submissionResource
+     * @param zip the view of the zipped submissionResource, which is closed along with this
+     *            wrapper, or null if the submission is a bare-bone XML
+     * @param taskReference the task reference already read from the submission xml of the submissionResource
+     */
+    public SubmissionWrapper(SubmissionResource submissionResource, ZipView zip, TaskReference taskReference) {
         this.submissionResource = submissionResource;
-        abstractSubmPojo = createAbstractSubmissionPojo();
-        taskRetriever = createTaskExtractor();
+        this.zip = zip;
+        this.taskReference = taskReference;
+        try {
+            taskRetriever = createTaskExtractor();
+        } catch (RuntimeException e) {
+            closeQuietly(zip);
+            throw e;
+        }
     }
 
     public SubmissionResource getProformasubmissionResource() {
@@ -39,18 +78,102 @@ public abstract class SubmissionWrapper {
 
     protected abstract TaskExtractor createTaskExtractor();
 
-    protected AbstractSubmissionType getAbstractSubmPojo() {
+    protected TaskReference getTaskReference() {
+        return taskReference;
+    }
+
+    /**
+     * @return the view of a zipped submission
+     * @throws IllegalStateException if the submission is not a ZIP archive
+     */
+    public ZipView getZip() {
+        if (null == zip)
+            throw new IllegalStateException("ProformaSubmission is not a ZIP archive.");
+        return zip;
+    }
+
+    protected AbstractSubmissionType getAbstractSubmPojo() throws Exception {
+        if (null == abstractSubmPojo)
+            abstractSubmPojo = XmlUtils.unmarshalToObject(readSubmissionXml(submissionResource, zip),
+                AbstractSubmissionType.class);
         return abstractSubmPojo;
     }
 
-    private AbstractSubmissionType createAbstractSubmissionPojo() throws Exception {
-        // get the submission xml file bytes, unless it's a zipped submission...
-        byte[] submXmlFileBytes = submissionResource.getContent();
-        if (submissionResource.getMimeType().equals(MimeType.ZIP)) {
-            String submXmlContent = Zip.getTextFileContentFromZip(submissionResource.getContent(),
-                ProformaSubmissionZipPathes.SUBMISSION_XML_FILE_NAME, Charsets.UTF_8);
-            submXmlFileBytes = submXmlContent.getBytes(Charsets.UTF_8);
+    /**
+     * @return the hex encoded SHA-256 hash of the submission's content, leaving out
+     * the data of the submitting student (see ProformaXmlReader.digestSubmission()),
+     * and the order and timestamps of the files in a zipped submission
+     */
+    public String getNormalizedContentHash() throws Exception {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        ProformaXmlReader.digestSubmission(readSubmissionXml(submissionResource, zip), digest);
+        if (null != zip) {
+            Map<String, ZipArchiveEntry> files = new TreeMap<>();
+            for (ZipArchiveEntry e : Collections.list(zip.getEntries())) {
+                String path = e.getName().replace('\\', '/');
+                if (!e.isDirectory() && !path.equals(ProformaSubmissionZipPathes.SUBMISSION_XML_FILE_NAME))
+                    files.put(path, e);
+            }
+            for (Map.Entry<String, ZipArchiveEntry> f : files.entrySet()) {
+                byte[] content = zip.getBytes(f.getValue());
+                digest.update((byte) 0);
+                digest.update(f.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.valueOf(content.length).getBytes(StandardCharsets.UTF_8));
+                digest.update(content);
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (null != zip)
+            zip.close();
+    }
+
+    /**
+     * @param submissionResource a zipped or a bare-bone XML submission
+     * @return a view of the zipped submission, or null if it's a bare-bone XML
+     */
+    public static ZipView openZip(SubmissionResource submissionResource) throws IOException {
+        if (submissionResource.getMimeType().equals(MimeType.ZIP))
+            return new ZipView(submissionResource.getContent());
+        return null;
+    }
+
+    /**
+     * Reads the task reference of a submission, and closes the zip if that fails.
+     */
+    public static TaskReference readTaskReference(SubmissionResource submissionResource, ZipView zip)
+        throws Exception {
+        try {
+            return ProformaXmlReader.readTaskReference(readSubmissionXml(submissionResource, zip));
+        } catch (Exception e) {
+            closeQuietly(zip);
+            throw e;
         }
-        return XmlUtils.unmarshalToObject(submXmlFileBytes, AbstractSubmissionType.class);
+    }
+
+    private static void closeQuietly(ZipView zip) {
+        if (null != zip) {
+            try {
+                zip.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @param submissionResource a zipped or a bare-bone XML submission
+     * @param zip the view of the zipped submissionResource, or null if it's a bare-bone XML
+     * @return the submission xml file bytes
+     * @throws Exception
+     */
+    private static byte[] readSubmissionXml(SubmissionResource submissionResource, ZipView zip) throws Exception {
+        // get the submission xml file bytes, unless it's a zipped submission...
+        if (null != zip)
+            return zip.getFile(ProformaSubmissionZipPathes.SUBMISSION_XML_FILE_NAME);
+        return submissionResource.getContent();
     }
 }
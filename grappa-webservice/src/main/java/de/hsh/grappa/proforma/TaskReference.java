@@ -0,0 +1,72 @@
+package de.hsh.grappa.proforma;
+
+/**
+ * Immutable read only class.
+ *
+ * Describes where the task of a submission is to be found, as read from
+ * the submission xml file by the ProformaXmlReader.
+ */
+public class TaskReference {
+    public enum Kind {
+        /** an external-task element pointing to a task repository or the cache */
+        EXTERNAL_TASK,
+        /** an included-task-file element with an embedded-zip-file */
+        EMBEDDED_ZIP_FILE,
+        /** an included-task-file element with an embedded-xml-file */
+        EMBEDDED_XML_FILE,
+        /** an included-task-file element with an attached-zip-file */
+        ATTACHED_ZIP_FILE,
+        /** an included-task-file element with an attached-xml-file */
+        ATTACHED_XML_FILE,
+        /** a native task element */
+        TASK
+    }
+
+    private final String namespace;
+    private final Kind kind;
+    private final String uuid;
+    private final String value;
+
+    public TaskReference(String namespace, Kind kind, String uuid, String value) {
+        this.namespace = namespace;
+        this.kind = kind;
+        this.uuid = uuid;
+        this.value = value;
+    }
+
+    /**
+     * @return the namespace of the submission, which tells the proforma version
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the (optional) task uuid attribute of an external-task or an included-task-file element
+     */
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * @return the uri of an external task, or the file path of an attached task file,
+     * or null for all other kinds
+     */
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskReference{" +
+            "namespace='" + namespace + '\'' +
+            ", kind=" + kind +
+            ", uuid='" + uuid + '\'' +
+            ", value='" + value + '\'' +
+            '}';
+    }
+}
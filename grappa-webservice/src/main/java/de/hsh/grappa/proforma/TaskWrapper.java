@@ -2,6 +2,7 @@ package de.hsh.grappa.proforma;
 
 import de.hsh.grappa.utils.XmlUtils;
 import de.hsh.grappa.utils.Zip;
+import org.apache.commons.codec.digest.DigestUtils;
 import proforma.ProformaSubmissionZipPathes;
 import proforma.xml.AbstractTaskType;
 
@@ -14,14 +15,20 @@ import java.nio.file.Paths;
  * from its owning submission (i.e. no info on whether this
  * task is external, included, or a native xml element in a
  * submission).
+ *
+ * Caching a task only requires its uuid, so the task xml is bound to
+ * POJOs only when they are actually asked for.
+ *
+ * Cached tasks are shared by concurrent grading requests (see
+ * TaskMemoryCache), so the POJOs must be treated as read-only.
  */
 public abstract class TaskWrapper {
     private TaskResource taskResource;
     private AbstractTaskType abstractTaskPojo;
+    private String contentHash;
 
-    public TaskWrapper(TaskResource taskResource) throws Exception {
+    public TaskWrapper(TaskResource taskResource) {
         this.taskResource = taskResource;
-        abstractTaskPojo = createAbstractTaskPojo();
     }
 
     public TaskResource getProformaTaskResource() {
@@ -30,19 +37,32 @@ public abstract class TaskWrapper {
 
     public void setProformaTask(TaskResource taskResource) {
         this.taskResource = taskResource;
+        this.contentHash = null;
     }
 
     public abstract String getUuid();
 
-    public String getUriNamespace() {
-        return abstractTaskPojo.getClass().getPackage().getAnnotation(XmlSchema.class).namespace();
+    /**
+     * @return the hex encoded SHA-256 hash of the task bytes, which identifies
+     * the task in the cache
+     */
+    public String getContentHash() {
+        if (null == contentHash)
+            contentHash = DigestUtils.sha256Hex(taskResource.getContent());
+        return contentHash;
     }
 
-    protected AbstractTaskType getAbstractTaskPojo() {
+    public String getUriNamespace() throws Exception {
+        return getAbstractTaskPojo().getClass().getPackage().getAnnotation(XmlSchema.class).namespace();
+    }
+
+    protected synchronized AbstractTaskType getAbstractTaskPojo() throws Exception {
+        if (null == abstractTaskPojo)
+            abstractTaskPojo = XmlUtils.unmarshalToObject(getTaskXmlFileBytes(), AbstractTaskType.class);
         return abstractTaskPojo;
     }
 
-    private AbstractTaskType createAbstractTaskPojo() throws Exception {
+    protected byte[] getTaskXmlFileBytes() throws Exception {
         // get the task xml file bytes, unless it's a zipped task...
         byte[] taskXmlFileBytes = taskResource.getContent();
         // If this ProformaTask is of the ZIP mimetype, we need to extract
@@ -63,6 +83,6 @@ public abstract class TaskWrapper {
                 ProformaSubmissionZipPathes.TASK_XML_FILE_NAME);
             taskXmlFileBytes = Zip.getFileFromZip(taskResource.getContent(), taskXmlFilePath.toString());
         }
-        return XmlUtils.unmarshalToObject(taskXmlFileBytes, AbstractTaskType.class);
+        return taskXmlFileBytes;
     }
 }
@@ -1,15 +1,16 @@
 package de.hsh.grappa.proforma;
 
 public class TaskWrapperImpl extends TaskWrapper {
-    private proforma.xml.TaskType concreteTaskPojo;
+    private String uuid;
 
     public TaskWrapperImpl(TaskResource taskResource) throws Exception {
         super(taskResource);
-        concreteTaskPojo = (proforma.xml.TaskType) getAbstractTaskPojo();
+        // The uuid is read without binding the whole task
+        uuid = ProformaXmlReader.readTaskUuid(getTaskXmlFileBytes());
     }
 
     @Override
     public String getUuid() {
-        return concreteTaskPojo.getUuid();
+        return uuid;
     }
 }
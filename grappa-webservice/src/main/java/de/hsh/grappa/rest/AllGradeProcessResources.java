@@ -1,5 +1,6 @@
 package de.hsh.grappa.rest;
 
+import de.hsh.grappa.application.GrappaServlet;
 import de.hsh.grappa.cache.RedisController;
 import de.hsh.grappa.proforma.MimeType;
 import de.hsh.grappa.proforma.ResponseResource;
@@ -14,13 +15,16 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletContext;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.InputStream;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
 
 @Path("/{lmsId}/gradeprocesses")
 public class AllGradeProcessResources {
@@ -40,10 +44,11 @@ public class AllGradeProcessResources {
     @POST
     @Consumes({MediaType.APPLICATION_XML, MediaType.MULTIPART_FORM_DATA, MediaType.APPLICATION_OCTET_STREAM})
     @Produces(MediaType.APPLICATION_JSON + "; charset=utf-8")
-    public Response grade(InputStream submission, @QueryParam("graderId") String graderId,
-                          @DefaultValue("true") @QueryParam("async") String async,
-                          @DefaultValue("false") @QueryParam("prioritize") boolean prioritize,
-                          @Context HttpHeaders headers) throws Exception {
+    public void grade(InputStream submission, @QueryParam("graderId") String graderId,
+                      @DefaultValue("true") @QueryParam("async") String async,
+                      @DefaultValue("false") @QueryParam("prioritize") boolean prioritize,
+                      @Context HttpHeaders headers,
+                      @Suspended AsyncResponse asyncResponse) throws Exception {
         log.debug("[GraderId: '{}']: grade() with async={} called.", graderId, async);
         MediaType contentType = headers.getMediaType();
         if (null != contentType) {
@@ -61,11 +66,16 @@ public class AllGradeProcessResources {
             SubmissionResource proformaSubm = new SubmissionResource
                 (IOUtils.toByteArray(submission), mimeType);
             log.info("[GraderId: {}] Processing submission: {}", graderId, proformaSubm);
-            String gradeProcId = new SubmissionProcessor(proformaSubm, graderId).process(prioritize);
+            String gradeProcId;
+            try (var processor = new SubmissionProcessor(proformaSubm, graderId)) {
+                gradeProcId = processor.process(prioritize);
+            }
 
             if(Boolean.parseBoolean(async) || async.equals("1"))
-                return replyWithTimeRemaining(gradeProcId);
-            return replyWhenResponseIsAvailable(gradeProcId);
+                asyncResponse.resume(replyWithTimeRemaining(gradeProcId));
+            else
+                replyWhenResponseIsAvailable(gradeProcId, asyncResponse);
+            return;
         }
 
         throw new de.hsh.grappa.exceptions.BadRequestException("Received grade request with unspecified content type.");
@@ -91,24 +101,39 @@ public class AllGradeProcessResources {
     }
 
     /**
-     * Blocks the calling thread until the submission has been graded or a timeout occurred.
+     * Replies once the submission has been graded or a timeout occurred. The request is
+     * suspended in the meantime, so no container thread is blocked while grading.
      * @param gradeProcId
-     * @return Status 200 OK and a valid proforma response.
-     * @throws Exception
+     * @param asyncResponse resumed with status 200 OK and a valid proforma response,
+     *                      or with the estimated time remaining if waiting timed out.
      */
-    private Response replyWhenResponseIsAvailable(String gradeProcId) throws Exception {
+    private void replyWhenResponseIsAvailable(String gradeProcId, AsyncResponse asyncResponse) {
         log.debug("Grading submission synchronously...");
 
-        ResponseResource respBlob = null;
-
-        try {
-            respBlob = new GradePoller(gradeProcId).poll();
-        } catch (TimeoutException e) {
+        GradePoller poller = new GradePoller(gradeProcId);
+        asyncResponse.setTimeoutHandler(ar -> {
             // Waiting timed out. Fall back to 202 Accepted and time remaining
             // so that the client may poll at a later time.
-            return replyWithTimeRemaining(gradeProcId);
-        }
+            try {
+                ar.resume(replyWithTimeRemaining(gradeProcId));
+            } catch (Exception e) {
+                ar.resume(e);
+            }
+        });
+        asyncResponse.setTimeout(GrappaServlet.CONFIG.getService().getSynchronous_submission_timeout_seconds(),
+            TimeUnit.SECONDS);
+        // stop waiting for the response once the request is done, e.g. timed out or disconnected
+        asyncResponse.register((CompletionCallback) throwable -> poller.cancel());
+
+        poller.poll().whenComplete((respBlob, e) -> {
+            if (null != e)
+                asyncResponse.resume(e);
+            else
+                asyncResponse.resume(createProformaResponse(respBlob));
+        });
+    }
 
+    private static Response createProformaResponse(ResponseResource respBlob) {
         String responseFileName = "response." +  (respBlob.getMimeType()
             .equals(MimeType.XML) ? "xml" : "zip");
         MediaType mediaType = respBlob.getMimeType().equals(MimeType.XML)
@@ -0,0 +1,167 @@
+package de.hsh.grappa.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import de.hsh.grappa.application.GrappaServlet;
+import de.hsh.grappa.exceptions.NotFoundException;
+import de.hsh.grappa.proforma.ResponseResource;
+import de.hsh.grappa.service.GradePoller;
+import de.hsh.grappa.service.GraderPoolManager;
+import de.hsh.grappa.utils.Json;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.Base64;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the progress of a grade process to a client as server-sent events,
+ * until the grade process has been graded.
+ *
+ * Events:
+ * - "status": the queue position and estimated seconds remaining, sent
+ *   initially and whenever they change, e.g.
+ *   {"estimatedSecondsRemaining":"40","queuePosition":"3"}
+ * - "response": the proforma response, sent once the grade process has
+ *   been graded, e.g.
+ *   {"mimeType":"text/xml","content":"base64 encoded response"}
+ * - "error": the grade process can't be found (anymore), e.g. because
+ *   it has been cancelled
+ *
+ * The stream is closed after a response or an error event.
+ */
+class GradeProcessEventStream {
+    private static final Logger log = LoggerFactory.getLogger(GradeProcessEventStream.class);
+
+    private final String gradeProcessId;
+    private final SseEventSink sink;
+    private final Sse sse;
+    private final GradePoller poller;
+    private GradeProcessStatus lastStatus = null;
+    private ScheduledFuture<?> statusUpdates = null;
+    private boolean closed = false;
+
+    GradeProcessEventStream(String gradeProcessId, SseEventSink sink, Sse sse) {
+        this.gradeProcessId = gradeProcessId;
+        this.sink = sink;
+        this.sse = sse;
+        this.poller = new GradePoller(gradeProcessId);
+    }
+
+    /**
+     * Sends the current status and keeps the client up to date from then on.
+     * @throws NotFoundException if the grade process does not exist
+     */
+    synchronized void open() throws Exception {
+        GradeProcessStatus status = GradeProcessStatus.of(gradeProcessId);
+        if (status.isGraded()) {
+            sendResponse(status.getResponse());
+            return;
+        }
+        sendStatus(status);
+        if (closed) // sending the status failed right away
+            return;
+        // Schedule the status updates before waiting for the response, so
+        // close() cancels them even if the response is already there
+        long interval = GrappaServlet.CONFIG.getService().getStatus_event_interval_seconds();
+        statusUpdates = GraderPoolManager.getInstance().getPollExecutor()
+            .scheduleWithFixedDelay(this::updateStatus, interval, interval, TimeUnit.SECONDS);
+        poller.poll().whenComplete((resp, e) -> {
+            if (null == e)
+                sendResponse(resp);
+            else
+                sendError(e);
+        });
+    }
+
+    private synchronized void updateStatus() {
+        if (closed)
+            return;
+        if (sink.isClosed()) {
+            close();
+            return;
+        }
+        try {
+            GradeProcessStatus status = GradeProcessStatus.of(gradeProcessId);
+            if (status.isGraded())
+                sendResponse(status.getResponse());
+            else if (!status.equals(lastStatus))
+                sendStatus(status);
+        } catch (Exception e) {
+            sendError(e);
+        }
+    }
+
+    private synchronized void sendStatus(GradeProcessStatus status) {
+        lastStatus = status;
+        send(sse.newEventBuilder()
+            .name("status")
+            .mediaType(MediaType.APPLICATION_JSON_TYPE)
+            .data(status.toJson())
+            .build());
+    }
+
+    private synchronized void sendResponse(ResponseResource resp) {
+        if (closed)
+            return;
+        log.debug("[GradeProcId: '{}']: Sending response event.", gradeProcessId);
+        JsonObject j = new JsonObject();
+        j.addProperty("mimeType", resp.getMimeType().toString());
+        j.addProperty("content", Base64.getEncoder().encodeToString(resp.getContent()));
+        send(sse.newEventBuilder()
+            .name("response")
+            .mediaType(MediaType.APPLICATION_JSON_TYPE)
+            .data(new Gson().toJson(j))
+            .build());
+        close();
+    }
+
+    private synchronized void sendError(Throwable e) {
+        if (closed)
+            return;
+        if (!(e instanceof NotFoundException)) {
+            log.error(e.getMessage());
+            log.error(ExceptionUtils.getStackTrace(e));
+        }
+        send(sse.newEventBuilder()
+            .name("error")
+            .mediaType(MediaType.APPLICATION_JSON_TYPE)
+            .data(Json.createJsonExceptionMessage(e))
+            .build());
+        close();
+    }
+
+    private void send(OutboundSseEvent event) {
+        if (closed)
+            return;
+        sink.send(event).whenComplete((v, e) -> {
+            if (null != e) {
+                // most likely the client disconnected
+                log.debug("[GradeProcId: '{}']: Sending event failed: {}", gradeProcessId, e.getMessage());
+                synchronized (this) {
+                    close();
+                }
+            }
+        });
+    }
+
+    private void close() {
+        if (closed)
+            return;
+        closed = true;
+        poller.cancel();
+        if (null != statusUpdates)
+            statusUpdates.cancel(false);
+        try {
+            sink.close();
+        } catch (Exception e) {
+            log.debug(e.getMessage());
+        }
+    }
+}
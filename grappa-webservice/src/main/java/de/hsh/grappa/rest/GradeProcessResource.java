@@ -3,10 +3,11 @@ package de.hsh.grappa.rest;
 
 import de.hsh.grappa.application.GrappaServlet;
 import de.hsh.grappa.cache.RedisController;
+import de.hsh.grappa.exceptions.BadRequestException;
 import de.hsh.grappa.proforma.MimeType;
 import de.hsh.grappa.proforma.ResponseResource;
+import de.hsh.grappa.service.GradePoller;
 import de.hsh.grappa.service.GraderPoolManager;
-import de.hsh.grappa.utils.Json;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,11 +16,19 @@ import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.concurrent.TimeUnit;
 
 
 @Path("/{lmsId}/gradeprocesses/{gradeProcessId}")
@@ -41,24 +50,69 @@ public class GradeProcessResource {
         this.sc = context;
     }
 
+    /**
+     * Returns the response of a grade process if it has been graded already, or
+     * its progress otherwise.
+     *
+     * With the wait parameter (e.g. "30s", "2m" or just "30" seconds), this is a
+     * long poll: if the grade process hasn't been graded yet, the reply is delayed
+     * until it is, or until the wait time (capped by max_poll_wait_seconds) has passed.
+     */
     @GET
 //    @Produces({
 //        MediaType.MULTIPART_FORM_DATA, 
 //        MediaType.APPLICATION_OCTET_STREAM,
 //        MediaType.APPLICATION_JSON + "; charset=utf-8"
 //    })
-    public Response poll(@PathParam("gradeProcessId") String gradeProcessId, @Context HttpHeaders headers)
-        throws Exception {
+    public void poll(@PathParam("gradeProcessId") String gradeProcessId, @QueryParam("wait") String wait,
+                     @Context HttpHeaders headers, @Suspended AsyncResponse asyncResponse) throws Exception {
         log.debug("[GradeProcId: '{}']: poll() called.", gradeProcessId);
+        long waitSeconds = Math.min(parseWaitSeconds(wait),
+            GrappaServlet.CONFIG.getService().getMax_poll_wait_seconds());
 
-        int queuedSubmPos = -1;
-        long avgGradingSeconds = RedisController.getInstance().getSubmissionAverageGradingDurationSeconds
-            (gradeProcessId, GrappaServlet.CONFIG.getService()
-                .getDefault_estimated_grading_seconds());
-        
-        // Check if the submission has been graded and if a response is available result
-        ResponseResource responseResource = RedisController.getInstance().getResponse(gradeProcessId);
-        if (null != responseResource) {
+        GradeProcessStatus status = GradeProcessStatus.of(gradeProcessId);
+        if (status.isGraded() || waitSeconds <= 0) {
+            asyncResponse.resume(createPollReply(status, headers));
+            return;
+        }
+
+        log.debug("[GradeProcId: '{}']: Waiting up to {} seconds for the response.", gradeProcessId, waitSeconds);
+        GradePoller poller = new GradePoller(gradeProcessId);
+        asyncResponse.setTimeoutHandler(ar -> {
+            // Nothing graded in time, reply with the current progress
+            try {
+                ar.resume(createPollReply(GradeProcessStatus.of(gradeProcessId), headers));
+            } catch (Exception e) {
+                ar.resume(e);
+            }
+        });
+        asyncResponse.setTimeout(waitSeconds, TimeUnit.SECONDS);
+        asyncResponse.register((CompletionCallback) throwable -> poller.cancel());
+        poller.poll().whenComplete((resp, e) -> {
+            if (null != e)
+                asyncResponse.resume(e);
+            else
+                asyncResponse.resume(createPollReply(GradeProcessStatus.graded(gradeProcessId, resp), headers));
+        });
+    }
+
+    /**
+     * Streams the progress of a grade process, and finally its response, as
+     * server-sent events. See GradeProcessEventStream for the events sent.
+     */
+    @GET
+    @Path("/events")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void events(@PathParam("gradeProcessId") String gradeProcessId, @Context SseEventSink sink,
+                       @Context Sse sse) throws Exception {
+        log.debug("[GradeProcId: '{}']: events() called.", gradeProcessId);
+        new GradeProcessEventStream(gradeProcessId, sink, sse).open();
+    }
+
+    private Response createPollReply(GradeProcessStatus status, HttpHeaders headers) {
+        String gradeProcessId = status.getGradeProcessId();
+        if (status.isGraded()) {
+            ResponseResource responseResource = status.getResponse();
             log.debug("[GradeProcId: '{}']: ProformaResponse file is available.", gradeProcessId);
             String responseFileName = "response." +  (responseResource.getMimeType()
                 .equals(MimeType.XML) ? "xml" : "zip");
@@ -78,29 +132,38 @@ public class GradeProcessResource {
                     gradeProcessId);
                 return resp.type(MediaType.MULTIPART_FORM_DATA).build();
             }
-        } else if (-1 != (queuedSubmPos = RedisController.getInstance().getQueuedSubmissionIndex(gradeProcessId))) {
-            log.debug("[GradeProcId: '{}']: Submission is still queued at position {}.",
-                gradeProcessId, queuedSubmPos);
-            //String gradeProcIdResponse = Json.createJsonKeyValueAsString("gradeProcessId", gradeProcId);
-            long estimatedSecondsRemaining =
-                GraderPoolManager.getInstance()
-                    .getEstimatedSecondsUntilGradeProcIdIsFinished(gradeProcessId);
-            String jsonResp = Json.createJsonKeyValueAsString(new String[][] {
-                {"estimatedSecondsRemaining", String.valueOf(estimatedSecondsRemaining)}
-            });
-            return Response.status(Response.Status.ACCEPTED).entity(jsonResp)
-                .type(MediaType.APPLICATION_JSON + "; charset=utf-8").build();
         }
-        else if (GraderPoolManager.getInstance().isGradeProcIdBeingGradedRightNow(gradeProcessId)) {
+        if (status.isQueued())
+            log.debug("[GradeProcId: '{}']: Submission is still queued.", gradeProcessId);
+        else
             log.debug("[GradeProcId: '{}']: Submission is being graded right now.", gradeProcessId);
-            String jsonResp = Json.createJsonKeyValueAsString(new String[][] {
-                {"estimatedGradingSeconds", String.valueOf(avgGradingSeconds)}
-            });
-            return Response.status(Response.Status.ACCEPTED).entity(jsonResp)
-                .type(MediaType.APPLICATION_JSON + "; charset=utf-8").build();
+        return Response.status(Response.Status.ACCEPTED).entity(status.toJson())
+            .type(MediaType.APPLICATION_JSON + "; charset=utf-8").build();
+    }
+
+    /**
+     * @param wait e.g. "30s", "2m" or "30" (seconds)
+     * @return the wait time in seconds, 0 if not specified
+     */
+    private static long parseWaitSeconds(String wait) throws BadRequestException {
+        if (null == wait || wait.isBlank())
+            return 0;
+        String w = wait.trim().toLowerCase();
+        long unit = 1;
+        if (w.endsWith("m")) {
+            unit = 60;
+            w = w.substring(0, w.length() - 1);
+        } else if (w.endsWith("s")) {
+            w = w.substring(0, w.length() - 1);
+        }
+        try {
+            long seconds = Long.parseLong(w) * unit;
+            if (seconds >= 0)
+                return seconds;
+        } catch (NumberFormatException e) {
+            // handled below
         }
-        throw new de.hsh.grappa.exceptions.NotFoundException(String.format("gradeProcessId '%s' was neither found in " +
-            "the submission queue nor in an active grading process.", gradeProcessId));
+        throw new BadRequestException(String.format("Invalid wait time '%s'.", wait));
     }
 
     @DELETE
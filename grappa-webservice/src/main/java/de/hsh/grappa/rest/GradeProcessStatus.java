@@ -0,0 +1,105 @@
+package de.hsh.grappa.rest;
+
+import de.hsh.grappa.application.GrappaServlet;
+import de.hsh.grappa.cache.RedisController;
+import de.hsh.grappa.exceptions.NotFoundException;
+import de.hsh.grappa.proforma.ResponseResource;
+import de.hsh.grappa.service.GraderPoolManager;
+import de.hsh.grappa.utils.Json;
+
+import java.util.Objects;
+
+/**
+ * Immutable read only class.
+ *
+ * A snapshot of a grade process: either its response, if it has been
+ * graded already, or how far it has progressed otherwise.
+ */
+class GradeProcessStatus {
+    private final String gradeProcessId;
+    private final ResponseResource response;
+    private final int queuePosition;
+    private final long estimatedSeconds;
+
+    private GradeProcessStatus(String gradeProcessId, ResponseResource response, int queuePosition,
+                               long estimatedSeconds) {
+        this.gradeProcessId = gradeProcessId;
+        this.response = response;
+        this.queuePosition = queuePosition;
+        this.estimatedSeconds = estimatedSeconds;
+    }
+
+    static GradeProcessStatus graded(String gradeProcessId, ResponseResource response) {
+        return new GradeProcessStatus(gradeProcessId, response, -1, 0);
+    }
+
+    /**
+     * @throws NotFoundException if the grade process was neither graded, nor is queued or being graded
+     */
+    static GradeProcessStatus of(String gradeProcessId) throws Exception {
+        // Check if the submission has been graded and if a response is available result
+        ResponseResource response = RedisController.getInstance().getResponse(gradeProcessId);
+        if (null != response)
+            return graded(gradeProcessId, response);
+        int queuedSubmPos = RedisController.getInstance().getQueuedSubmissionIndex(gradeProcessId);
+        if (-1 != queuedSubmPos) {
+            long estimatedSecondsRemaining = GraderPoolManager.getInstance()
+                .getEstimatedSecondsUntilGradeProcIdIsFinished(gradeProcessId);
+            return new GradeProcessStatus(gradeProcessId, null, queuedSubmPos, estimatedSecondsRemaining);
+        }
+        // A gradeProcId attached to another one is graded along with it, possibly by another grappa instance
+        if (GraderPoolManager.getInstance().isGradeProcIdBeingGradedRightNow(gradeProcessId)
+            || null != RedisController.getInstance().getAttachedToGradeProcId(gradeProcessId)) {
+            long avgGradingSeconds = RedisController.getInstance().getSubmissionAverageGradingDurationSeconds
+                (gradeProcessId, GrappaServlet.CONFIG.getService().getDefault_estimated_grading_seconds());
+            return new GradeProcessStatus(gradeProcessId, null, -1, avgGradingSeconds);
+        }
+        throw new NotFoundException(String.format("gradeProcessId '%s' was neither found in " +
+            "the submission queue nor in an active grading process.", gradeProcessId));
+    }
+
+    String getGradeProcessId() {
+        return gradeProcessId;
+    }
+
+    boolean isGraded() {
+        return null != response;
+    }
+
+    ResponseResource getResponse() {
+        return response;
+    }
+
+    boolean isQueued() {
+        return -1 != queuePosition;
+    }
+
+    /**
+     * @return the progress of a grade process that hasn't been graded yet as JSON
+     */
+    String toJson() {
+        if (isQueued()) {
+            return Json.createJsonKeyValueAsString(new String[][] {
+                {"estimatedSecondsRemaining", String.valueOf(estimatedSeconds)},
+                {"queuePosition", String.valueOf(queuePosition)}
+            });
+        }
+        return Json.createJsonKeyValueAsString(new String[][] {
+            {"estimatedGradingSeconds", String.valueOf(estimatedSeconds)}
+        });
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GradeProcessStatus that = (GradeProcessStatus) o;
+        return queuePosition == that.queuePosition && estimatedSeconds == that.estimatedSeconds
+            && Objects.equals(gradeProcessId, that.gradeProcessId) && Objects.equals(response, that.response);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(gradeProcessId, response, queuePosition, estimatedSeconds);
+    }
+}
@@ -56,6 +56,17 @@ public class GraderResource {
         graderStatus.addProperty("busyInstances", GraderPoolManager.getInstance().getBusyCount(graderId));
         graderStatus.addProperty("queuedSubmissions",
             RedisController.getInstance().getSubmissionQueueCount(graderId));
+        var es = GraderPoolManager.getInstance().getExecutorStatistics(graderId);
+        graderStatus.addProperty("executorMaxThreads", es.getMaxThreads());
+        graderStatus.addProperty("executorThreads", es.getThreads());
+        graderStatus.addProperty("executorActiveThreads", es.getActiveThreads());
+        graderStatus.addProperty("executorQueuedTasks", es.getQueuedTasks());
+        graderStatus.addProperty("executorQueueCapacity", es.getQueueCapacity());
+        graderStatus.addProperty("executorStuckThreads", es.getStuckThreads());
+        var rc = GraderPoolManager.getInstance().getResultCache(graderId);
+        graderStatus.addProperty("resultCacheHits", rc.getHits());
+        graderStatus.addProperty("resultCacheMisses", rc.getMisses());
+        graderStatus.addProperty("resultCacheStored", rc.getStored());
 //        graderStatus.addProperty("estimatedGradingSecondsTillQueueProcessed",
 //            GraderPoolManager.getInstance().getEstimatedSecondsUntilQueueIsGraded(graderId));
         var gsOpt = GraderPoolManager.getInstance().getGraderStatistics()
@@ -5,8 +5,12 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import de.hsh.grappa.application.GrappaServlet;
+import de.hsh.grappa.cache.CompressionStatistics;
+import de.hsh.grappa.cache.TaskMemoryCache;
+import de.hsh.grappa.cache.RedisController;
 import de.hsh.grappa.service.GraderPoolManager;
 import de.hsh.grappa.service.GraderStatistics;
+import de.hsh.grappa.service.IngestStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +59,36 @@ public class GrappaResource {
         service.addProperty("totalAllExceptExecuted",
             total.getSucceeded()+total.getCancelled()+total.getFailed()+
             total.getTimedOut());
+        CompressionStatistics compression = RedisController.getInstance().getCompressionStatistics();
+        service.addProperty("cacheCompressedResources", compression.getCompressed());
+        service.addProperty("cacheCompressionUncompressedBytes", compression.getUncompressedBytes());
+        service.addProperty("cacheCompressionCompressedBytes", compression.getCompressedBytes());
+        service.addProperty("cacheCompressionRatio", compression.getCompressionRatio());
+        service.addProperty("cacheCompressionMillis", compression.getCompressionMillis());
+        service.addProperty("cacheDecompressedResources", compression.getDecompressed());
+        service.addProperty("cacheDecompressionMillis", compression.getDecompressionMillis());
+        TaskMemoryCache taskCache = TaskMemoryCache.getInstance();
+        var taskCacheStats = taskCache.getStats();
+        JsonObject taskCacheStatus = new JsonObject();
+        taskCacheStatus.addProperty("entries", taskCache.getSize());
+        taskCacheStatus.addProperty("bytes", taskCache.getSizeBytes());
+        taskCacheStatus.addProperty("hits", taskCacheStats.hitCount());
+        taskCacheStatus.addProperty("misses", taskCacheStats.missCount());
+        taskCacheStatus.addProperty("hitRate", taskCacheStats.hitRate());
+        taskCacheStatus.addProperty("evictions", taskCacheStats.evictionCount());
+        taskCacheStatus.addProperty("loadFailures", taskCacheStats.loadExceptionCount());
+        service.add("taskMemoryCache", taskCacheStatus);
+        IngestStatistics ingest = IngestStatistics.getInstance();
+        JsonObject ingestStages = new JsonObject();
+        for (IngestStatistics.Stage stage : IngestStatistics.Stage.values()) {
+            JsonObject s = new JsonObject();
+            s.addProperty("count", ingest.getCount(stage));
+            s.addProperty("totalMillis", ingest.getTotalMillis(stage));
+            s.addProperty("averageMillis", ingest.getAverageMillis(stage));
+            ingestStages.add(stage.name().toLowerCase(), s);
+        }
+        service.add("submissionIngestStages", ingestStages);
+        service.addProperty("coalescedSubmissions", ingest.getCoalescedCount());
         service.add("graderRuntimeInfo", graderStatusArray);
 
         // TODO maybe add: service.add("static_config", new JsonParser().parse(gson.toJson(GrappaServlet.CONFIG))
@@ -33,4 +33,12 @@ public class TaskResource {
             return Response.ok().build();
         return Response.status(Response.Status.NOT_FOUND).build();
     }
+
+    @HEAD
+    @Path("/content/{taskHash}")
+    public Response contentExists(@PathParam("taskHash") String taskHash) {
+        if (RedisController.getInstance().isTaskContentCached(taskHash.toLowerCase()))
+            return Response.ok().build();
+        return Response.status(Response.Status.NOT_FOUND).build();
+    }
 }
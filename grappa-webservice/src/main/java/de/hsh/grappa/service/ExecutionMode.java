@@ -0,0 +1,82 @@
+package de.hsh.grappa.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Determines what kind of threads run the blocking work on the grading
+ * path, i.e. dispatching submissions, supervising grading processes,
+ * running backend plugins (and with them, their docker and redis calls)
+ * and waiting for synchronous grading results.
+ *
+ * PLATFORM uses regular OS threads. VIRTUAL uses virtual threads, which
+ * do not pin an OS thread while blocked. Virtual threads require a Java 21+
+ * runtime. Since this project is compiled for Java 11, they are looked up
+ * reflectively, and PLATFORM is used as a fallback if they are unavailable.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionMode.class);
+
+    /**
+     * @param name the execution_mode value of the service config, case insensitive
+     * @return the matching execution mode, or PLATFORM if the name is empty or
+     * virtual threads are not supported by the running JVM
+     */
+    public static ExecutionMode fromConfig(String name) {
+        if (null == name || name.isEmpty())
+            return PLATFORM;
+        ExecutionMode mode = ExecutionMode.valueOf(name.trim().toUpperCase());
+        if (VIRTUAL == mode && !isVirtualThreadSupported()) {
+            log.warn("Execution mode '{}' requires Java 21 or later (running on {}). Falling back to {}.",
+                mode, System.getProperty("java.version"), PLATFORM);
+            return PLATFORM;
+        }
+        return mode;
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a thread factory for this execution mode. Threads created by
+     * the factory use the context class loader of the calling thread, so JAXB
+     * remains available to them (see {@link JaxbThreadFactory}).
+     * @param namePrefix the prefix of the thread names
+     */
+    public ThreadFactory newThreadFactory(String namePrefix) {
+        if (PLATFORM == this)
+            return new JaxbThreadFactory(namePrefix);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ThreadFactory virtualThreadFactory = createVirtualThreadFactory(namePrefix);
+        return r -> {
+            Thread thread = virtualThreadFactory.newThread(r);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        };
+    }
+
+    private static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        try {
+            // Thread.ofVirtual().name(namePrefix + "-", 1).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, namePrefix + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM.", e);
+        }
+    }
+}
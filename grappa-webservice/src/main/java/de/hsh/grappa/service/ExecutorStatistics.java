@@ -0,0 +1,81 @@
+package de.hsh.grappa.service;
+
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Immutable read only class.
+ *
+ * This class provides a snapshot of a grader pool's
+ * executors, i.e. how many threads they may use and currently
+ * use, how many tasks are waiting for a free thread, and how
+ * many threads are stuck in grader calls that have been
+ * cancelled or timed out, but did not stop.
+ */
+public class ExecutorStatistics {
+    private final int maxThreads;
+    private final int threads;
+    private final int activeThreads;
+    private final int queuedTasks;
+    private final int queueCapacity;
+    private final int stuckThreads;
+
+    public ExecutorStatistics(int maxThreads, int threads, int activeThreads, int queuedTasks, int queueCapacity,
+                              int stuckThreads) {
+        this.maxThreads = maxThreads;
+        this.threads = threads;
+        this.activeThreads = activeThreads;
+        this.queuedTasks = queuedTasks;
+        this.queueCapacity = queueCapacity;
+        this.stuckThreads = stuckThreads;
+    }
+
+    public static ExecutorStatistics of(List<ThreadPoolExecutor> executors, int stuckThreads) {
+        int maxThreads = 0, threads = 0, activeThreads = 0, queued = 0, queueCapacity = 0;
+        for (ThreadPoolExecutor executor : executors) {
+            int q = executor.getQueue().size();
+            maxThreads += executor.getMaximumPoolSize();
+            threads += executor.getPoolSize();
+            activeThreads += executor.getActiveCount();
+            queued += q;
+            queueCapacity += q + executor.getQueue().remainingCapacity();
+        }
+        return new ExecutorStatistics(maxThreads, threads, activeThreads, queued, queueCapacity, stuckThreads);
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getStuckThreads() {
+        return stuckThreads;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorStatistics{" +
+            "maxThreads=" + maxThreads +
+            ", threads=" + threads +
+            ", activeThreads=" + activeThreads +
+            ", queuedTasks=" + queuedTasks +
+            ", queueCapacity=" + queueCapacity +
+            ", stuckThreads=" + stuckThreads +
+            '}';
+    }
+}
@@ -0,0 +1,75 @@
+package de.hsh.grappa.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of clients waiting for the response of a grading process,
+ * and wakes them up as soon as the response has been cached.
+ *
+ * Completions are reported by the local grader pools right after caching
+ * a response, and by the redis subscription for responses that have been
+ * cached by other grappa instances.
+ */
+public class GradeCompletionRegistry {
+    private static final Logger log = LoggerFactory.getLogger(GradeCompletionRegistry.class);
+    private static final GradeCompletionRegistry instance = new GradeCompletionRegistry();
+
+    private final ConcurrentHashMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    private static class Waiters {
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        int count = 0;
+    }
+
+    private GradeCompletionRegistry() {
+    }
+
+    public static GradeCompletionRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Registers a waiter for a grading process. Each call must be paired with
+     * a call to unregister() once the waiter is no longer interested.
+     *
+     * The response might have been cached right before registering, so
+     * a waiter needs to check the cache after registering.
+     * @param gradeProcId
+     * @return a future that is completed once the response of the grading process is cached
+     */
+    public CompletableFuture<Void> register(String gradeProcId) {
+        return waiters.compute(gradeProcId, (id, w) -> {
+            if (null == w)
+                w = new Waiters();
+            w.count++;
+            return w;
+        }).completion;
+    }
+
+    public void unregister(String gradeProcId) {
+        waiters.computeIfPresent(gradeProcId, (id, w) -> 0 == --w.count ? null : w);
+    }
+
+    /**
+     * Wakes up all waiters of a grading process.
+     * @param gradeProcId
+     */
+    public void complete(String gradeProcId) {
+        Waiters w = waiters.remove(gradeProcId);
+        if (null != w) {
+            log.debug("[GradeProcId: '{}']: Notifying waiters of the response.", gradeProcId);
+            w.completion.complete(null);
+        }
+    }
+
+    /**
+     * @return the number of grading processes that clients are waiting for
+     */
+    public int getAwaitedCount() {
+        return waiters.size();
+    }
+}
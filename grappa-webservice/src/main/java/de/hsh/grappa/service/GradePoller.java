@@ -1,83 +1,81 @@
 package de.hsh.grappa.service;
 
-import de.hsh.grappa.application.GrappaServlet;
 import de.hsh.grappa.cache.RedisController;
-import de.hsh.grappa.exceptions.GrappaException;
 import de.hsh.grappa.proforma.ResponseResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 
 /**
- * This is a fairly primitive grading result poller.
- * It blocks for a specified amount of time (eg a total of 10 minutes)
- * while periodically polling for a Proforma response result from
- * cache.
+ * Waits for the Proforma response result of a grading process without
+ * blocking the calling thread.
  *
- * One improvement might take using the estimated remaining grading
- * seconds into consideration.
+ * The GradeCompletionRegistry signals as soon as the response is cached,
+ * so there is no delay and no polling of the cache in the meantime. As a
+ * safety net against a missed notification, e.g. while the redis
+ * subscription is reconnecting, the cache is checked again every once
+ * in a while.
+ *
+ * Waiting does not time out by itself, the caller decides how long to
+ * wait and cancels the poller when it's no longer interested.
  */
 public class GradePoller {
     private static final Logger log = LoggerFactory.getLogger(GradePoller.class);
-    private String gradeProcId;
-    private Thread t;
-    private GrappaException exOccurredWhenWaiting= null;
-    private ResponseResource respBlob = null;
+    private final String gradeProcId;
+    private final CompletableFuture<ResponseResource> result = new CompletableFuture<>();
+    private final ScheduledExecutorService executor;
 
-    private final long intervalPoll = 2000;
+    private static final long recheckIntervalMillis = 30000;
 
     public GradePoller(String gradeProcId) {
         this.gradeProcId = gradeProcId;
-        t = new Thread() {
-            @Override
-            public void run() {
-                synchronized (GradePoller.this) {
-                    while(!Thread.currentThread().isInterrupted()) {
-                        log.debug("[GradeProcId: '{}']: polling...", gradeProcId);
-                        try {
-                            respBlob = RedisController.getInstance().getResponse(gradeProcId);
-                        } catch (GrappaException e1) {
-                            exOccurredWhenWaiting= e1;
-                            break;
-                        }
-                        if(null != respBlob)
-                            break;
-                        try {
-                            Thread.sleep(intervalPoll);
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                        }
-                    };
-                }
-            }
-        };
+        this.executor = GraderPoolManager.getInstance().getPollExecutor();
     }
 
-    public ResponseResource poll() throws Exception {
-        t.start();
-        try {
-            t.join(GrappaServlet.CONFIG.getService().getSynchronous_submission_timeout_seconds() * 1000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new GrappaException("Waiting for response interrupted.");
-        }
-        finally {
-            t.interrupt();
-        }
+    /**
+     * @return a future that is completed with the response once it is cached, or exceptionally if
+     * the response could not be retrieved from cache
+     */
+    public CompletableFuture<ResponseResource> poll() {
+        // Register before the first check of the cache, so a response that is
+        // cached in between isn't missed
+        var completion = GradeCompletionRegistry.getInstance().register(gradeProcId);
+        // Fetching the response is done on the poll executor, not on the (grading or
+        // redis subscription) thread that signals completion.
+        completion.thenRunAsync(this::checkForResponse, executor);
+        ScheduledFuture<?> recheck = executor.scheduleWithFixedDelay(this::checkForResponse, 0,
+            recheckIntervalMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((resp, e) -> {
+            recheck.cancel(false);
+            GradeCompletionRegistry.getInstance().unregister(gradeProcId);
+        });
+        return result;
+    }
 
-        synchronized (this) {
-            if(null != respBlob) {
-                log.debug("[GradeProcId: '{}']: Response received. Returning.", gradeProcId);
-                return respBlob;
-            }
-            if (null != exOccurredWhenWaiting) {
-                throw exOccurredWhenWaiting;
+    /**
+     * Stops waiting for the response.
+     */
+    public void cancel() {
+        result.cancel(false);
+    }
+
+    private void checkForResponse() {
+        if (result.isDone())
+            return;
+        log.debug("[GradeProcId: '{}']: checking for response...", gradeProcId);
+        try {
+            ResponseResource respBlob = RedisController.getInstance().getResponse(gradeProcId);
+            if (null != respBlob) {
+                log.debug("[GradeProcId: '{}']: Response received.", gradeProcId);
+                result.complete(respBlob);
             }
+        } catch (Exception e) {
+            result.completeExceptionally(e);
         }
-
-        throw new TimeoutException(String.format("Waiting for grading result ('%s') timed out after %d seconds.",
-           gradeProcId, GrappaServlet.CONFIG.getService().getSynchronous_submission_timeout_seconds()));
     }
 }
@@ -5,6 +5,7 @@ import de.hsh.grappa.application.GrappaServlet;
 import de.hsh.grappa.cache.QueuedSubmission;
 import de.hsh.grappa.cache.RedisController;
 import de.hsh.grappa.config.GraderConfig;
+import de.hsh.grappa.exceptions.GrappaException;
 import de.hsh.grappa.exceptions.NoResultGraderExecption;
 import de.hsh.grappa.exceptions.NotFoundException;
 import de.hsh.grappa.plugin.BackendPlugin;
@@ -21,8 +22,10 @@ import java.io.InputStream;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -47,16 +50,29 @@ public class GraderPool {
 
     private static final String GRAPPA_CONTEXT_GRADER_ID = "Grappa.Context.GraderId";
     private static final String GRAPPA_CONTEXT_GRADE_PROCESS_ID = "Grappa.Context.GraderProcessId";
+    /**
+     * How long a grading process may take beyond the grader's timeout, e.g. initializing
+     * the backend plugin, until identical submissions are no longer attached to it.
+     */
+    private static final int IN_FLIGHT_GRACE_SECONDS = 60;
     private Properties graderConfigInitProps;
 
     private ConcurrentHashMap<String /*gradeProcId*/, Future<ResponseResource>> gpMap =
         new ConcurrentHashMap<>();
+    // Backend plugin calls currently running. Those whose grading process has
+    // already ended (i.e. is no longer in gpMap) are stuck.
+    private ConcurrentHashMap<String /*gradeProcId*/, Thread> pluginThreads =
+        new ConcurrentHashMap<>();
 
     private HashMap<String /*taskUuid*/, MinMaxPriorityQueue<Duration> /*seconds*/>
         gradingDurationMap = new HashMap<>();
 
     private Semaphore semaphore;
     private GraderPoolManager graderWorkersMgr;
+    private final ThreadPoolExecutor supervisorExecutor;
+    private final ThreadPoolExecutor pluginExecutor;
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean(false);
+    private final GradingResultCache resultCache;
 
     public GraderPool(GraderConfig graderConfig, GraderPoolManager graderManager) throws Exception {
         this.graderConfig = graderConfig;
@@ -70,6 +86,79 @@ public class GraderPool {
             graderConfig.getId(), graderConfig.getConcurrent_grading_processes());
         this.semaphore = new Semaphore(graderConfig.getConcurrent_grading_processes());
         this.graderWorkersMgr = graderManager;
+        this.supervisorExecutor = createSupervisorExecutor(graderConfig, graderManager.getExecutionMode());
+        this.pluginExecutor = createPluginExecutor(graderConfig, graderManager.getExecutionMode());
+        this.resultCache = new GradingResultCache(graderConfig);
+    }
+
+    /**
+     * Every grading process needs two threads: one that supervises it (i.e.
+     * enforces the timeout) and one that runs the backend plugin.
+     * <p>
+     * The semaphore limits the number of grading processes, and so the number
+     * of supervisors. A supervisor that has just released the semaphore may
+     * not be back in the pool yet, so its successor may have to wait for it
+     * in the queue for a moment.
+     */
+    private static ThreadPoolExecutor createSupervisorExecutor(GraderConfig graderConfig,
+                                                               ExecutionMode executionMode) {
+        int threads = graderConfig.getConcurrent_grading_processes();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(threads), executionMode.newThreadFactory("grader-" + graderConfig.getId() +
+            "-supervisor"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Backend plugin calls never wait in a queue, so the timeout of a grading
+     * process starts when its plugin call starts. A plugin call that ignores
+     * being cancelled keeps its thread after its grading process has ended.
+     * Up to spare_grading_threads threads are added for such stuck calls.
+     * Once these are taken as well, plugin calls are rejected.
+     */
+    private static ThreadPoolExecutor createPluginExecutor(GraderConfig graderConfig, ExecutionMode executionMode) {
+        if (0 > graderConfig.getSpare_grading_threads())
+            throw new IllegalArgumentException(String.format("spare_grading_threads must not be negative " +
+                "for graderId '%s'.", graderConfig.getId()));
+        int threads = graderConfig.getConcurrent_grading_processes();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+            threads + graderConfig.getSpare_grading_threads(), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            executionMode.newThreadFactory("grader-" + graderConfig.getId()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public void shutdown() {
+        supervisorExecutor.shutdownNow();
+        pluginExecutor.shutdownNow();
+    }
+
+    /**
+     * Signals this grader pool that there might be work to do, i.e. a
+     * submission has been queued or a grader instance has become free.
+     * <p>
+     * At most one dispatch task per pool is scheduled at any time. The
+     * flag is cleared before the queue is drained, so a signal that arrives
+     * while a dispatch task is busy schedules another one and is never lost.
+     */
+    public void signalDispatch() {
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            try {
+                graderWorkersMgr.getDispatchExecutor().execute(this::dispatch);
+            } catch (RejectedExecutionException e) {
+                dispatchScheduled.set(false);
+                log.debug("[GraderId: '{}']: Dispatcher is shut down, ignoring signal.", graderConfig.getId());
+            }
+        }
+    }
+
+    private void dispatch() {
+        dispatchScheduled.set(false);
+        while (!graderWorkersMgr.isStartingNewGradingProcessesStopped()
+            && !Thread.currentThread().isInterrupted() && tryGrade()) {
+            // keep taking submissions until the queue is empty or the pool is exhausted
+        }
     }
 
     /**
@@ -78,9 +167,10 @@ public class GraderPool {
      * <p>
      * Runs asynchronously.
      *
-     * @return True, if a grade process has started. False, if all workers are busy
+     * @return True, if a submission has been taken from the queue. False, if all
+     * workers are busy or the queue is empty
      */
-    public boolean tryGrade() {
+    private boolean tryGrade() {
         // We need to acquire the semaphore this soon already, since we
         // pop a submission from the queue in the next step and commit
         // ourselves to grading it. Otherwise, we'd have to put the submission
@@ -90,22 +180,42 @@ public class GraderPool {
             log.debug("[Grader: '{}']: semaphore aquired, {} left", graderConfig.getId(), semaphore.availablePermits());
             boolean releaseSemaphore = true; // release in current thread if we can't start a grading process
             try {
-                QueuedSubmission queuedSubm = RedisController.getInstance().popSubmission(graderConfig.getId());
+                QueuedSubmission queuedSubm = RedisController.getInstance().popSubmission(graderConfig.getId(),
+                    graderConfig.getTimeout_seconds() + IN_FLIGHT_GRACE_SECONDS);
                 if (null != queuedSubm) {
-                    releaseSemaphore = false; // starting another thread that will release the semaphore eventually
                     log.info("[GraderId: '{}', GradeProcessId: '{}']: Starting grading process...",
                         graderConfig.getId(), queuedSubm.getGradeProcId());
-                    CompletableFuture.supplyAsync(() -> {
-                        return runGradingProcess(queuedSubm);
-                    }, getJaxbExecutor()).thenAccept(resp -> {
+                    CompletableFuture<ResponseResource> gradingProcess;
+                    try {
+                        gradingProcess = CompletableFuture.supplyAsync(() -> {
+                            return runGradingProcess(queuedSubm);
+                        }, supervisorExecutor);
+                    } catch (RejectedExecutionException e) {
+                        String errorMessage = String.format("[GraderId: '%s', GradeProcessId: '%s']: Grading process " +
+                            "rejected, the grader's executor is saturated.", graderConfig.getId(),
+                            queuedSubm.getGradeProcId());
+                        log.error(errorMessage);
+                        totalGradingProcessesFailed.incrementAndGet();
+                        cacheProformaResponseResult(createInternalErrorResponse(errorMessage),
+                            queuedSubm.getGradeProcId());
+                        return true;
+                    }
+                    releaseSemaphore = false; // the grading process will release the semaphore eventually
+                    gradingProcess.thenAccept(resp -> {
                         cacheProformaResponseResult(resp, queuedSubm.getGradeProcId());
-                    }).thenRun(() -> {
+                    }).whenComplete((v, e) -> {
                         // We are done. This grader instance has become free, so check if there's anything
                         // queued without prompting.
-                        tryGrade(); // reuse future's async thread
+                        signalDispatch();
                     });
-                } else
-                    log.debug("[GraderID: '{}']: This grader's submission queue is empty.", graderConfig.getId());
+                    return true;
+                }
+                log.debug("[GraderID: '{}']: This grader's submission queue is empty.", graderConfig.getId());
+            } catch (NotFoundException | GrappaException e) {
+                // The gradeProcId has been popped, but its submission could not be restored.
+                // Carry on with the next one.
+                log.error(e.getMessage());
+                return true;
             } catch (Exception e) {
                 log.error(e.getMessage());
             } finally {
@@ -115,8 +225,9 @@ public class GraderPool {
                         semaphore.availablePermits());
                 }
             }
-            return true; // will grade
+            return false; // nothing to grade
         }
+        log.debug("[GraderId: '{}']: Grader pool is currently exhausted.", graderConfig.getId());
         return false; // will not grade (all workers are busy)
     }
 
@@ -144,6 +255,11 @@ public class GraderPool {
 
     public ResponseResource runGradingProcess(QueuedSubmission subm) {
         try {
+            ResponseResource cachedResp = resultCache.get(subm.getGradeProcId());
+            if (null != cachedResp) {
+                totalGradingProcessesSucceeded.incrementAndGet();
+                return cachedResp;
+            }
             LocalDateTime beginTime = LocalDateTime.now();
             Properties props = getGraderConfigWithContextIds(graderConfig.getId(), subm.getGradeProcId());
             // Create a fresh backend plugin instance for every grading request
@@ -155,10 +271,19 @@ public class GraderPool {
             int timeoutSeconds = graderConfig.getTimeout_seconds();
             try {
                 futureTask = new FutureTask<ResponseResource>(() -> {
-                    return bp.grade(subm.getSubmission());
+                    return runBackendPlugin(bp, subm);
                 });
                 gpMap.put(subm.getGradeProcId(), futureTask);
-                new Thread(futureTask).start();
+                try {
+                    pluginExecutor.execute(futureTask);
+                } catch (RejectedExecutionException e) {
+                    totalGradingProcessesFailed.incrementAndGet();
+                    String errorMessage = String.format("[GraderId: '%s', GradeProcessId: '%s']: Grading process " +
+                        "rejected, all grader threads are busy (%d stuck).", graderConfig.getId(),
+                        subm.getGradeProcId(), getStuckThreadCount());
+                    log.error(errorMessage);
+                    return ProformaResponseGenerator.createInternalErrorResponse(errorMessage);
+                }
                 ResponseResource resp = futureTask.get(timeoutSeconds, TimeUnit.SECONDS);
                 log.info("[GraderId: '{}', GradeProcessId: '{}']: Grading process exited.",
                     graderConfig.getId(), subm.getGradeProcId());
@@ -170,6 +295,7 @@ public class GraderPool {
                     // a valid proforma response. Anything else (such as errors) will skew the average duration.
                     setAverageGradingDuration(Duration.between(beginTime, LocalDateTime.now()),
                         subm.getGradeProcId());
+                    resultCache.put(subm.getGradeProcId(), resp);
                     return resp;
                 }
                 throw new NoResultGraderExecption("Grader did not supply a proforma response.");
@@ -232,6 +358,31 @@ public class GraderPool {
         return null;
     }
 
+    private ResponseResource runBackendPlugin(BackendPlugin bp, QueuedSubmission subm) throws Exception {
+        pluginThreads.put(subm.getGradeProcId(), Thread.currentThread());
+        try {
+            return bp.grade(subm.getSubmission());
+        } finally {
+            pluginThreads.remove(subm.getGradeProcId());
+            if (!gpMap.containsKey(subm.getGradeProcId()))
+                log.debug("[GraderId: '{}', GradeProcessId: '{}']: Grader thread '{}' has stopped after its " +
+                    "grading process ended.",
+                    graderConfig.getId(), subm.getGradeProcId(), Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * @return the number of plugin calls still running although their grading process has ended
+     */
+    private int getStuckThreadCount() {
+        int stuck = 0;
+        for (String gradeProcId : pluginThreads.keySet()) {
+            if (!gpMap.containsKey(gradeProcId))
+                ++stuck;
+        }
+        return stuck;
+    }
+
     private void setAverageGradingDuration(Duration d, String gradeProcId) {
         try {
             String taskUuid = RedisController.getInstance().getAssociatedTaskUuid(gradeProcId);
@@ -267,10 +418,24 @@ public class GraderPool {
         if (null != resp) {
             log.debug("[GraderId: '{}', GradeProcessId: '{}']: Caching response: {}", graderConfig.getId(),
                 gradeProcId, resp);
-            RedisController.getInstance().setResponse(gradeProcId, resp);
+            List<String> attached = RedisController.getInstance().setResponse(gradeProcId, resp);
+            // Wake up local waiters right away, instead of waiting for the round trip
+            // through redis pub/sub
+            GradeCompletionRegistry.getInstance().complete(gradeProcId);
+            for (String id : attached)
+                GradeCompletionRegistry.getInstance().complete(id);
+            if (!attached.isEmpty())
+                log.info("[GraderId: '{}', GradeProcessId: '{}']: Response passed on to attached gradeProcIds: {}",
+                    graderConfig.getId(), gradeProcId, attached);
         } else {
             log.debug("[GraderId: '{}', GradeProcessId: '{}']: Grading process did not supply a response result. " +
                 "Nothing to cache.", graderConfig.getId(), gradeProcId);
+            // Whoever attached to this grading process still needs a response
+            String queued = RedisController.getInstance().requeueAttachedSubmission(graderConfig.getId(),
+                gradeProcId);
+            if (null != queued)
+                log.info("[GraderId: '{}', GradeProcessId: '{}']: Attached gradeProcId '{}' queued for grading " +
+                    "instead.", graderConfig.getId(), gradeProcId, queued);
         }
     }
 
@@ -296,6 +461,14 @@ public class GraderPool {
         return getPoolSize() - semaphore.availablePermits();
     }
 
+    public ExecutorStatistics getExecutorStatistics() {
+        return ExecutorStatistics.of(List.of(supervisorExecutor, pluginExecutor), getStuckThreadCount());
+    }
+
+    public GradingResultCache getResultCache() {
+        return resultCache;
+    }
+
     public GraderStatistics getGraderStatistics() {
         return new GraderStatistics(
             totalGradingProcessesExecuted.get(),
@@ -343,10 +516,4 @@ public class GraderPool {
     public long getTotalGradingProcessesTimedOut() {
         return totalGradingProcessesTimedOut.get();
     }
-
-    private ForkJoinPool getJaxbExecutor() {
-        JaxbForkJoinWorkerThreadFactory threadFactory = new JaxbForkJoinWorkerThreadFactory();
-        int parallelism = Math.min(0x7fff /* copied from ForkJoinPool.java */, Runtime.getRuntime().availableProcessors());
-        return new ForkJoinPool(parallelism, threadFactory, null, false);
-    }
-}
\ No newline at end of file
+}
@@ -10,14 +10,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A facade/manager pattern of sorts for GraderPool instances.
  * Any access and calls to GraderPools are exclusively done
  * using this manager class.
+ *
+ * Submissions are dispatched event-driven: whenever a submission
+ * is queued for a grader (or one of its grader instances becomes
+ * free), the corresponding GraderPool is signalled and drains its
+ * queue on the shared dispatch executor. There is no global
+ * monitor and no polling of queue lengths.
  */
-public class GraderPoolManager implements Runnable {
+public class GraderPoolManager {
     private static final Logger log = LoggerFactory.getLogger(GraderPoolManager.class);
     private static GraderPoolManager gwm = null;
     private final AtomicBoolean stopStartingNewGradingProcesses =
@@ -26,6 +35,10 @@ public class GraderPoolManager implements Runnable {
     //private ConcurrentHashMap<String, GraderPool> pools;
     private HashMap<String, GraderPool> pools;
 
+    private ExecutorService dispatchExecutor;
+    private ScheduledExecutorService pollExecutor;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+
     public static GraderPoolManager getInstance() {
         if (null == gwm)
             gwm = new GraderPoolManager();
@@ -33,9 +46,20 @@ public class GraderPoolManager implements Runnable {
     }
 
     public void init(List<GraderConfig> graders) {
+        this.executionMode = ExecutionMode.fromConfig(GrappaServlet.CONFIG.getService().getExecution_mode());
+        log.info("Using execution mode '{}'.", executionMode);
+        this.dispatchExecutor = Executors.newCachedThreadPool(executionMode.newThreadFactory("dispatcher"));
+        this.pollExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(),
+            executionMode.newThreadFactory("grade-poller"));
         this.pools = new HashMap<>(graders.size()); //new ConcurrentHashMap<>(graders.size());
         for (GraderConfig g : graders) {
             if (g.getEnabled()) {
+                try {
+                    RedisController.getInstance().migrateSubmissionQueue(g.getId());
+                } catch (Exception e) {
+                    log.error("[GraderId: '{}']: Could not migrate submission queue.", g.getId());
+                    log.error(e.getMessage());
+                }
                 try {
                     this.pools.put(g.getId(), new GraderPool(g, this));
                 } catch (Exception e) {
@@ -46,6 +70,58 @@ public class GraderPoolManager implements Runnable {
             } else log.debug("Ignoring disabled grader '{}'.",
                 g.getId());
         }
+        // Pick up any submissions that are still queued from a previous run
+        signalAllPools();
+    }
+
+    public void shutdown() {
+        stopStartingNewGradingProcesses();
+        if (null != dispatchExecutor)
+            dispatchExecutor.shutdownNow();
+        if (null != pollExecutor)
+            pollExecutor.shutdownNow();
+        if (null != pools) {
+            for (GraderPool pool : pools.values())
+                pool.shutdown();
+        }
+    }
+
+    /**
+     * Notifies the grader pool of the given graderId that a new
+     * submission has been queued. The submission is picked up right
+     * away if a grader instance is available.
+     * @param graderId
+     */
+    public void notifySubmissionQueued(String graderId) {
+        var pool = pools.get(graderId);
+        if (null != pool)
+            pool.signalDispatch();
+        else
+            log.warn("[GraderId: '{}']: Submission queued for a grader without a grader pool.", graderId);
+    }
+
+    private void signalAllPools() {
+        for (GraderPool pool : pools.values())
+            pool.signalDispatch();
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    ExecutorService getDispatchExecutor() {
+        return dispatchExecutor;
+    }
+
+    /**
+     * @return the executor used for waiting on, and periodically checking, grade processes
+     */
+    public ScheduledExecutorService getPollExecutor() {
+        return pollExecutor;
+    }
+
+    boolean isStartingNewGradingProcessesStopped() {
+        return stopStartingNewGradingProcesses.get();
     }
 
     public boolean isGradeProcIdBeingGradedRightNow(String gradeProcId) {
@@ -62,6 +138,7 @@ public class GraderPoolManager implements Runnable {
 
     public void resumeStartingNewGradingProcesses() {
         stopStartingNewGradingProcesses.set(false);
+        signalAllPools();
     }
 
     public boolean cancelGradingProcess(String gradeProcId) throws Exception {
@@ -74,33 +151,6 @@ public class GraderPoolManager implements Runnable {
             graderId, gradeProcId));
     }
 
-    @Override
-    public synchronized void run() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
-
-            for (Map.Entry<String, GraderPool> e : pools.entrySet()) {
-                // Iterate through all graders (grader pools), check if any of them
-                // have queued submissions
-                while (0 < RedisController.getInstance().getSubmissionQueueCount(e.getKey())
-                    && !Thread.currentThread().isInterrupted()) {
-                    if (!stopStartingNewGradingProcesses.get()) {
-                        if (!e.getValue().tryGrade()) {
-                            log.debug("[GraderId: '{}']: Grader pool is currently exhausted.",
-                                e.getKey());
-                            break; // this particular grader pool's exhausted
-                        }
-                    }
-                }
-            }
-        }
-    }
-
     /**
      * @return A list of grader ids. All of these graders are guaranteed to be active (enabled).
      */
@@ -129,6 +179,20 @@ public class GraderPoolManager implements Runnable {
         throw new NotFoundException(String.format("GraderId '%s' does not exist.", graderId));
     }
 
+    public ExecutorStatistics getExecutorStatistics(String graderId) throws NotFoundException {
+        var pool = pools.get(graderId);
+        if(null != pool)
+            return pool.getExecutorStatistics();
+        throw new NotFoundException(String.format("GraderId '%s' does not exist.", graderId));
+    }
+
+    public GradingResultCache getResultCache(String graderId) throws NotFoundException {
+        var pool = pools.get(graderId);
+        if(null != pool)
+            return pool.getResultCache();
+        throw new NotFoundException(String.format("GraderId '%s' does not exist.", graderId));
+    }
+
 //    public long getEstimatedSecondsUntilQueueIsGraded(String graderId) throws NotFoundException {
 //        var pool = pools.get(graderId);
 //        if (null != pool) {
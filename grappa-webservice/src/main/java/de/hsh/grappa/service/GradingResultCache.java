@@ -0,0 +1,120 @@
+package de.hsh.grappa.service;
+
+import de.hsh.grappa.cache.RedisController;
+import de.hsh.grappa.config.GraderConfig;
+import de.hsh.grappa.proforma.ResponseResource;
+import de.hsh.grappa.proforma.SubmissionWrapper;
+import de.hsh.grappa.proforma.TaskWrapper;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the grading results of a grader, so submissions of identical
+ * content, e.g. unmodified templates or resubmissions, are graded only
+ * once.
+ *
+ * Caching is opt-in per grader (see result_cache_ttl_seconds), and is
+ * never done for graders marked as nondeterministic. A result is keyed
+ * by the graderId, the task hash and the normalized submission hash,
+ * which leaves out the data of the submitting student. Only successful
+ * grading results are cached.
+ *
+ * The cache itself is failsafe: if redis cannot be reached, the
+ * submission is simply graded.
+ */
+public class GradingResultCache {
+    private static final Logger log = LoggerFactory.getLogger(GradingResultCache.class);
+
+    private final GraderConfig graderConfig;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+
+    public GradingResultCache(GraderConfig graderConfig) {
+        this.graderConfig = graderConfig;
+    }
+
+    public static boolean isEnabled(GraderConfig graderConfig) {
+        return graderConfig.getResult_cache_ttl_seconds() > 0 && !graderConfig.getNondeterministic();
+    }
+
+    /**
+     * @return the key of the grading result of a submission
+     */
+    public static String createResultKey(String graderId, TaskWrapper task, SubmissionWrapper subm)
+        throws Exception {
+        return graderId + ":" + task.getContentHash() + ":" + subm.getNormalizedContentHash();
+    }
+
+    /**
+     * @return the cached result for the gradeProcId's submission, or null if there is none
+     */
+    public ResponseResource get(String gradeProcId) {
+        if (!isEnabled(graderConfig))
+            return null;
+        try {
+            String resultKey = RedisController.getInstance().getAssociatedResultKey(gradeProcId);
+            if (null == resultKey)
+                return null;
+            ResponseResource resp = RedisController.getInstance().getGradingResult(resultKey);
+            if (null != resp) {
+                hits.incrementAndGet();
+                log.info("[GraderId: '{}', GradeProcessId: '{}']: Grading result of an identical submission " +
+                    "found in cache.", graderConfig.getId(), gradeProcId);
+            } else {
+                misses.incrementAndGet();
+            }
+            return resp;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            log.error(ExceptionUtils.getStackTrace(e));
+            return null;
+        }
+    }
+
+    /**
+     * Caches the successful grading result of the gradeProcId's submission.
+     */
+    public void put(String gradeProcId, ResponseResource resp) {
+        if (!isEnabled(graderConfig))
+            return;
+        try {
+            String resultKey = RedisController.getInstance().getAssociatedResultKey(gradeProcId);
+            if (null == resultKey)
+                return;
+            RedisController.getInstance().setGradingResult(resultKey, resp,
+                graderConfig.getResult_cache_ttl_seconds());
+            stored.incrementAndGet();
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            log.error(ExceptionUtils.getStackTrace(e));
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of grading results stored in the cache
+     */
+    public long getStored() {
+        return stored.get();
+    }
+
+    @Override
+    public String toString() {
+        return "GradingResultCache{" +
+            "hits=" + hits +
+            ", misses=" + misses +
+            ", stored=" + stored +
+            '}';
+    }
+}
@@ -0,0 +1,86 @@
+package de.hsh.grappa.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often each stage of taking on a submission has been passed
+ * and how long it took in total, from parsing the submission up to
+ * queueing it for grading, and how many submissions have been attached to
+ * the grade process of an identical submission instead of being queued.
+ */
+public class IngestStatistics {
+    private static final IngestStatistics instance = new IngestStatistics();
+
+    public enum Stage {
+        /** extracting the submission xml and reading its task reference */
+        PARSE_SUBMISSION,
+        /** checking the requested grader */
+        VALIDATE,
+        /** extracting, downloading or loading the task from cache, reading and checking its uuid */
+        EXTRACT_TASK,
+        /** caching the task or refreshing its timeout */
+        CACHE_TASK,
+        /** pushing the submission to the queue */
+        QUEUE
+    }
+
+    private final Map<Stage, AtomicLong> counts = new EnumMap<>(Stage.class);
+    private final Map<Stage, AtomicLong> nanos = new EnumMap<>(Stage.class);
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private IngestStatistics() {
+        for (Stage s : Stage.values()) {
+            counts.put(s, new AtomicLong());
+            nanos.put(s, new AtomicLong());
+        }
+    }
+
+    public static IngestStatistics getInstance() {
+        return instance;
+    }
+
+    void add(Stage stage, long nanoseconds) {
+        counts.get(stage).incrementAndGet();
+        nanos.get(stage).addAndGet(nanoseconds);
+    }
+
+    void incrementCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    public long getCount(Stage stage) {
+        return counts.get(stage).get();
+    }
+
+    public long getTotalMillis(Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.get(stage).get());
+    }
+
+    /**
+     * @return the average time a stage took, or 0 if it hasn't been passed yet
+     */
+    public double getAverageMillis(Stage stage) {
+        long count = counts.get(stage).get();
+        return 0 == count ? 0 : nanos.get(stage).get() / 1e6 / count;
+    }
+
+    /**
+     * @return the number of submissions attached to the grade process of an identical
+     * submission in flight, rather than queued
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    @Override
+    public String toString() {
+        return "IngestStatistics{" +
+            "counts=" + counts +
+            ", nanos=" + nanos +
+            ", coalesced=" + coalesced +
+            '}';
+    }
+}
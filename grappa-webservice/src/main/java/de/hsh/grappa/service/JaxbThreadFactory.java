@@ -0,0 +1,27 @@
+package de.hsh.grappa.service;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Context, reason, and source of this class:
+// https://stackoverflow.com/questions/51518781/jaxb-not-available-on-tomcat-9-and-java-9-10
+// Threads of a plain executor would use the system class loader as their context
+// class loader, which cannot see the JAXB implementation bundled with the web app.
+public class JaxbThreadFactory implements ThreadFactory {
+    private final ClassLoader classLoader;
+    private final String namePrefix;
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    public JaxbThreadFactory(String namePrefix) {
+        this.classLoader = Thread.currentThread().getContextClassLoader();
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, namePrefix + "-" + threadNumber.getAndIncrement());
+        thread.setContextClassLoader(classLoader);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -3,19 +3,22 @@ package de.hsh.grappa.service;
 import com.google.common.base.Strings;
 import de.hsh.grappa.application.GrappaServlet;
 import de.hsh.grappa.cache.RedisController;
+import de.hsh.grappa.cache.TaskMemoryCache;
+import de.hsh.grappa.config.GraderConfig;
 import de.hsh.grappa.exceptions.BadRequestException;
 import de.hsh.grappa.exceptions.GrappaException;
 import de.hsh.grappa.exceptions.NotFoundException;
 import de.hsh.grappa.proforma.*;
+import de.hsh.grappa.service.IngestStatistics.Stage;
 import de.hsh.grappa.utils.ObjectId;
-import de.hsh.grappa.utils.XmlUtils;
-import de.hsh.grappa.utils.Zip;
+import de.hsh.grappa.utils.ZipView;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import proforma.ProformaSubmissionZipPathes;
-import proforma.xml.AbstractSubmissionType;
 
-import java.nio.charset.StandardCharsets;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
 
 /**
  * This class takes on a submitted student solution
@@ -23,15 +26,23 @@ import java.nio.charset.StandardCharsets;
  * is valid, caches the underlying task of that submission and passes
  * the submission onto the requested GradingPool as specified
  * by the graderId.
+ *
+ * The submission xml is read once, and the task reference read from
+ * it is shared by all stages. The time each stage takes is recorded in the
+ * IngestStatistics.
+ *
+ * A processor takes on a single submission, and must be closed afterwards.
  */
-public class SubmissionProcessor {
+public class SubmissionProcessor implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(SubmissionProcessor.class);
+    private static final IngestStatistics stats = IngestStatistics.getInstance();
     private SubmissionWrapper subm;
     private String graderId;
+    private GraderConfig graderConfig;
 
     public SubmissionProcessor(/*GrappaConfig config,*/ SubmissionResource subm, String graderId) throws Exception {
         //this.config = config;
-        this.subm = createProformaSubmission(subm);
+        this.subm = timed(Stage.PARSE_SUBMISSION, () -> createProformaSubmission(subm));
         this.graderId = graderId;
     }
 
@@ -43,16 +54,10 @@ public class SubmissionProcessor {
      * @throws Exception
      */
     private SubmissionWrapper createProformaSubmission(SubmissionResource submissionResource) throws Exception {
-        // get the submission xml file bytes, unless it's a zipped submission...
-        byte[] submXmlFileBytes = submissionResource.getContent();
-        if (submissionResource.getMimeType().equals(MimeType.ZIP)) {
-            String submXmlFileContent = Zip.getTextFileContentFromZip(submissionResource.getContent(),
-                ProformaSubmissionZipPathes.SUBMISSION_XML_FILE_NAME, StandardCharsets.UTF_8);
-            submXmlFileBytes = submXmlFileContent.getBytes(StandardCharsets.UTF_8);
-        }
-
-        AbstractSubmissionType abstractSubmType = XmlUtils.unmarshalToObject(submXmlFileBytes,
-            AbstractSubmissionType.class);
+        // Only the task reference is read, the submission isn't bound to POJOs
+        // unless a later stage needs them
+        ZipView zip = SubmissionWrapper.openZip(submissionResource);
+        TaskReference taskRef = SubmissionWrapper.readTaskReference(submissionResource, zip);
 
         // This is some obsolete code that originally supported different versions of
         // Proforma formats.
@@ -60,22 +65,23 @@ public class SubmissionProcessor {
         // does not intend to keep multiple versions in one JAR. Rather, one proformaxml JAR
         // represents one proforma version (currently version 2.1).
         // The code still works, of course, so it will stay for now as is.
-        if (abstractSubmType instanceof proforma.xml.SubmissionType) {
-            return new SubmissionWrapperImpl(submissionResource);
-        } /*else if (abstractSubmType instanceof proforma.xml.v2xx.SubmissionType) {
+        if (ProformaXmlReader.PROFORMA_NAMESPACE.equals(taskRef.getNamespace())) {
+            return new SubmissionWrapperImpl(submissionResource, zip, taskRef);
+        } /*else if (PROFORMA_V2XX_NAMESPACE.equals(taskRef.getNamespace())) {
             // add new versions here
         }*/
 
+        if (null != zip)
+            zip.close();
         throw new GrappaException("Unknown Proforma version of submission.");
     }
 
     /**
-     * Makes sure the submission is not missing any required data as specified by
-     * the Proforma format.
-     * @throws BadRequestException when an ill-formatted submission is received
-     * @throws GrappaException     when an internal service error occurs
+     * Makes sure the requested grader can be used for grading.
+     * @throws NotFoundException when the grader does not exist
+     * @throws GrappaException   when the grader is disabled
      */
-    private void validateSubmission() throws Exception {
+    private void validateGrader() throws Exception {
         // Make sure the requested graderId exists and
         // is enabled in the config file
         var grader = GrappaServlet.CONFIG.getGraders().stream().filter(g -> g.getId().equals(graderId)).findFirst();
@@ -85,8 +91,15 @@ public class SubmissionProcessor {
         else if (!grader.get().getEnabled())
             throw new GrappaException(String.format("Grader '%s' is disabled in the service's configuration file.",
                 graderId));
+        graderConfig = grader.get();
+    }
 
-        var task = subm.getTask();
+    /**
+     * Makes sure the task is not missing any required data as specified by
+     * the Proforma format.
+     * @throws BadRequestException when an ill-formatted submission is received
+     */
+    private void validateTask(TaskWrapper task) throws Exception {
         String taskuuid = task.getUuid();
         if (Strings.isNullOrEmpty(taskuuid)) {
             // TODO: taskuuid may not be set in the submission, it might be in the task ojbect though
@@ -102,31 +115,73 @@ public class SubmissionProcessor {
      */
     public String process(boolean prioritize) throws Exception {// throws BadRequestException, NotFoundException,
         // GrappaException {
-        validateSubmission();
-        cacheTask();
+        timed(Stage.VALIDATE, this::validateGrader);
+        TaskWrapper task = timed(Stage.EXTRACT_TASK, () -> {
+            TaskWrapper t = subm.getTask();
+            validateTask(t);
+            return t;
+        });
+        timed(Stage.CACHE_TASK, () -> cacheTask(task));
         // Queue submission for grading
         String gradeProcId = ObjectId.createObjectId();
-        RedisController.getInstance().pushSubmission(graderId, gradeProcId, subm.getTask().getUuid(),
-            subm.getProformasubmissionResource(), prioritize);
-        synchronized (GraderPoolManager.getInstance()) {
-            GraderPoolManager.getInstance().notify();
-        }
+        timed(Stage.QUEUE, () -> {
+            // The result key must be set before the submission can be popped from the queue
+            if (GradingResultCache.isEnabled(graderConfig))
+                RedisController.getInstance().setAssociatedResultKey(gradeProcId,
+                    GradingResultCache.createResultKey(graderId, task, subm));
+            // Retries of a submission still in flight are attached to its grade process
+            String submissionKey = task.getContentHash() + ":"
+                + DigestUtils.sha256Hex(subm.getProformasubmissionResource().getContent());
+            String attachedTo = RedisController.getInstance().pushSubmission(graderId, gradeProcId, submissionKey,
+                task.getUuid(), subm.getProformasubmissionResource(), prioritize);
+            if (null != attachedTo) {
+                stats.incrementCoalesced();
+                log.info("[GradeProcId: '{}']: Identical submission is already being processed, attached to " +
+                    "gradeProcId '{}'.", gradeProcId, attachedTo);
+            }
+        });
+        GraderPoolManager.getInstance().notifySubmissionQueued(graderId);
         return gradeProcId;
     }
 
     /**
      * Cache any incoming task of a submission.
-     * If a task has already been cached at some point, its TTL
-     * is simply re-newed.
+     * Tasks are cached by their content, so a task that has already been
+     * cached at some point, even under a different uuid, is not stored
+     * again. Its TTL is simply re-newed.
      * @throws Exception
      */
-    private void cacheTask() throws Exception {
-        TaskWrapper task = subm.getTask();
-        if (!RedisController.getInstance().isTaskCached(task.getUuid())) {
-            RedisController.getInstance().cacheTask(task.getUuid(), task.getProformaTaskResource());
-        } else {
-            // otherwise, refresh existing cached task timeout
-            RedisController.getInstance().refreshTaskTimeout(task.getUuid());
+    private void cacheTask(TaskWrapper task) throws Exception {
+        // refresh an existing cached task's timeout, which also tells whether it's cached at all
+        if (!RedisController.getInstance().refreshTaskTimeout(task.getUuid(), task.getContentHash())) {
+            RedisController.getInstance().cacheTask(task.getUuid(), task.getContentHash(),
+                task.getProformaTaskResource());
+        }
+        TaskMemoryCache.getInstance().put(task.getContentHash(), task);
+    }
+
+    @Override
+    public void close() throws IOException {
+        subm.close();
+    }
+
+    private interface StageAction {
+        void run() throws Exception;
+    }
+
+    private static void timed(Stage stage, StageAction action) throws Exception {
+        timed(stage, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private static <T> T timed(Stage stage, Callable<T> callable) throws Exception {
+        long begin = System.nanoTime();
+        try {
+            return callable.call();
+        } finally {
+            stats.add(stage, System.nanoTime() - begin);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package de.hsh.grappa.cache;
+
+import de.hsh.grappa.config.CompressionConfig;
+import de.hsh.grappa.proforma.MimeType;
+import de.hsh.grappa.proforma.ProformaResource;
+import de.hsh.grappa.proforma.ResponseResource;
+import de.hsh.grappa.proforma.SubmissionResource;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProformaResourceCodecTest {
+    private static final byte[] XML = xml(500);
+    private static final byte[] SMALL_XML = xml(1);
+
+    @Test
+    public void roundTripsCompressedXml() {
+        ProformaResourceCodec codec = new ProformaResourceCodec(new CompressionConfig());
+        byte[] encoded = codec.encode(new SubmissionResource(XML, MimeType.XML));
+        assertTrue("XML should have been compressed", encoded.length < XML.length / 2);
+        assertRoundTrip(codec, encoded, XML, MimeType.XML);
+        assertEquals(1, codec.getStatistics().getCompressed());
+        assertEquals(1, codec.getStatistics().getDecompressed());
+    }
+
+    @Test
+    public void roundTripsUncompressedXml() {
+        ProformaResourceCodec codec = new ProformaResourceCodec(new CompressionConfig());
+        // below the size threshold
+        assertRoundTrip(codec, codec.encode(new SubmissionResource(SMALL_XML, MimeType.XML)), SMALL_XML,
+            MimeType.XML);
+        // not getting any smaller
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+        assertRoundTrip(codec, codec.encode(new SubmissionResource(random, MimeType.XML)), random, MimeType.XML);
+        // compression disabled
+        CompressionConfig disabled = new CompressionConfig();
+        disabled.setEnabled(false);
+        codec = new ProformaResourceCodec(disabled);
+        assertRoundTrip(codec, codec.encode(new SubmissionResource(XML, MimeType.XML)), XML, MimeType.XML);
+        assertEquals(0, codec.getStatistics().getCompressed());
+    }
+
+    @Test
+    public void roundTripsZipUncompressed() {
+        ProformaResourceCodec codec = new ProformaResourceCodec(new CompressionConfig());
+        // ZIP content is compressed already, even if it doesn't look like it
+        byte[] encoded = codec.encode(new SubmissionResource(XML, MimeType.ZIP));
+        assertTrue(encoded.length > XML.length);
+        assertRoundTrip(codec, encoded, XML, MimeType.ZIP);
+        assertEquals(0, codec.getStatistics().getCompressed());
+    }
+
+    @Test
+    public void decodesLegacyValues() {
+        ProformaResourceCodec codec = new ProformaResourceCodec(new CompressionConfig());
+        byte[] legacy = Base64.getEncoder().encode(SerializationUtils.serialize(
+            new ResponseResource(XML, MimeType.XML)));
+        assertRoundTrip(codec, legacy, XML, MimeType.XML);
+    }
+
+    @Test
+    public void rejectsCorruptValues() {
+        ProformaResourceCodec codec = new ProformaResourceCodec(new CompressionConfig());
+        byte[] compressed = codec.encode(new SubmissionResource(XML, MimeType.XML));
+
+        assertRejected(codec, "not a resource at all".getBytes(StandardCharsets.UTF_8));
+        assertRejected(codec, withByte(compressed, 2, 7)); // version
+        assertRejected(codec, withByte(compressed, 3, 7)); // mime type
+        assertRejected(codec, withByte(compressed, 4, 7)); // codec
+        assertRejected(codec, withByte(compressed, 5, 0x80)); // negative length
+        assertRejected(codec, withByte(compressed, 8, compressed[8] + 1)); // wrong length
+        byte[] garbled = compressed.clone();
+        for (int i = 9; i < garbled.length; ++i)
+            garbled[i] = (byte) 0xFF;
+        assertRejected(codec, garbled);
+    }
+
+    @Test
+    public void rejectsTruncatedValues() {
+        ProformaResourceCodec codec = new ProformaResourceCodec(new CompressionConfig());
+        byte[] compressed = codec.encode(new SubmissionResource(XML, MimeType.XML));
+        byte[] uncompressed = codec.encode(new SubmissionResource(SMALL_XML, MimeType.XML));
+
+        assertRejected(codec, Arrays.copyOf(compressed, compressed.length - 1));
+        assertRejected(codec, Arrays.copyOf(compressed, compressed.length / 2));
+        assertRejected(codec, Arrays.copyOf(uncompressed, uncompressed.length - 1));
+        // cut off within the header
+        assertRejected(codec, Arrays.copyOf(compressed, 6));
+    }
+
+    private static void assertRoundTrip(ProformaResourceCodec codec, byte[] encoded, byte[] content,
+                                        MimeType mimeType) {
+        ProformaResource decoded = codec.decode(encoded, SubmissionResource::new);
+        assertArrayEquals(content, decoded.getContent());
+        assertEquals(mimeType, decoded.getMimeType());
+    }
+
+    private static void assertRejected(ProformaResourceCodec codec, byte[] bytes) {
+        try {
+            codec.decode(bytes, SubmissionResource::new);
+            fail("Corrupt value has been decoded.");
+        } catch (SerializationException expected) {
+        }
+    }
+
+    private static byte[] withByte(byte[] bytes, int index, int value) {
+        byte[] copy = bytes.clone();
+        copy[index] = (byte) value;
+        return copy;
+    }
+
+    private static byte[] xml(int files) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><submission>");
+        for (int i = 0; i < files; ++i)
+            sb.append("<file id=\"").append(i).append("\"><embedded-txt-file>class Main").append(i)
+                .append(" { }</embedded-txt-file></file>");
+        return sb.append("</submission>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,71 @@
+package de.hsh.grappa.test;
+
+import de.hsh.grappa.service.ExecutionMode;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Compares the platform and virtual thread execution modes for the kind of
+ * work found on the grading path: many concurrent tasks that mostly block
+ * (waiting on a grader container, a redis reply or a synchronous result).
+ *
+ * This is not part of the regular test run. Run it manually on a Java 21+ JVM:
+ * mvn test -Dtest=ExecutionModeBenchmark -Dbenchmark=true
+ */
+public class ExecutionModeBenchmark {
+    private static final int CONCURRENT_TASKS = 2000;
+    private static final int BLOCKING_CALLS_PER_TASK = 10;
+    private static final long BLOCKING_MILLIS_PER_CALL = 20;
+
+    @Test
+    public void comparePlatformAndVirtualThreads() throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        Assume.assumeTrue("Virtual threads require Java 21+", ExecutionMode.isVirtualThreadSupported());
+        // warm up both modes once
+        run(ExecutionMode.PLATFORM, 200);
+        run(ExecutionMode.VIRTUAL, 200);
+
+        // A platform thread pool can't grow to thousands of threads without exhausting
+        // memory, so it is bounded, just like the grader pools' executors.
+        report(ExecutionMode.PLATFORM, run(ExecutionMode.PLATFORM, 200));
+        report(ExecutionMode.VIRTUAL, run(ExecutionMode.VIRTUAL, CONCURRENT_TASKS));
+    }
+
+    private static long[] run(ExecutionMode mode, int maxThreads) throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), mode.newThreadFactory("benchmark-" + mode));
+        try {
+            long begin = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(CONCURRENT_TASKS);
+            for (int i = 0; i < CONCURRENT_TASKS; ++i) {
+                futures.add(executor.submit(() -> {
+                    for (int c = 0; c < BLOCKING_CALLS_PER_TASK; ++c) {
+                        try {
+                            Thread.sleep(BLOCKING_MILLIS_PER_CALL);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }));
+            }
+            int peakPlatformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+            for (Future<?> f : futures)
+                f.get();
+            return new long[]{System.nanoTime() - begin, peakPlatformThreads};
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void report(ExecutionMode mode, long[] result) {
+        System.out.println(String.format("%-8s %d tasks x %d blocking calls: %5d ms, live platform threads: %d",
+            mode, CONCURRENT_TASKS, BLOCKING_CALLS_PER_TASK, TimeUnit.NANOSECONDS.toMillis(result[0]), result[1]));
+    }
+}
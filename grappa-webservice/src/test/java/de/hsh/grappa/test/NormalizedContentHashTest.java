@@ -0,0 +1,112 @@
+package de.hsh.grappa.test;
+
+import de.hsh.grappa.proforma.MimeType;
+import de.hsh.grappa.proforma.SubmissionResource;
+import de.hsh.grappa.proforma.SubmissionWrapperImpl;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class NormalizedContentHashTest {
+    private static final String SUBMISSION =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<submission xmlns=\"urn:proforma:v2.1\">\n" +
+        "  <external-task uuid=\"7a6b\"><uri>http://localhost/task.zip</uri></external-task>\n" +
+        "  <files><file mimetype=\"text/plain\" id=\"1\"><attached-txt-file>Main.java</attached-txt-file></file>" +
+        "</files>\n" +
+        "  <lms url=\"http://lms\"><submission-datetime>2026-10-17T10:00:00</submission-datetime>" +
+        "<user-id>alice</user-id></lms>\n" +
+        "  <result-spec format=\"xml\" structure=\"separate-test-feedback\" lang=\"en\"/>\n" +
+        "</submission>";
+
+    private static final String MAIN = "class Main { }";
+    private static final String UTIL = "class Util { }";
+
+    @Test
+    public void ignoresLmsElement() throws Exception {
+        String otherStudent = SUBMISSION.replace("alice", "bob").replace("10:00:00", "11:30:00");
+        assertEquals(xmlHash(SUBMISSION), xmlHash(otherStudent));
+        String noLms = SUBMISSION.replaceAll("<lms .*</lms>", "");
+        assertEquals(xmlHash(SUBMISSION), xmlHash(noLms));
+    }
+
+    @Test
+    public void ignoresPrefixesAndAttributeOrder() throws Exception {
+        String prefixed = SUBMISSION
+            .replace("<submission xmlns=\"urn:proforma:v2.1\">", "<p:submission xmlns:p=\"urn:proforma:v2.1\">")
+            .replace("</submission>", "</p:submission>")
+            .replaceAll("<(/?)(?!p:|\\?)([a-z])", "<$1p:$2");
+        String reordered = SUBMISSION.replace("<file mimetype=\"text/plain\" id=\"1\">",
+            "<file id=\"1\" mimetype=\"text/plain\">");
+        assertEquals(xmlHash(SUBMISSION), xmlHash(prefixed));
+        assertEquals(xmlHash(SUBMISSION), xmlHash(reordered));
+    }
+
+    @Test
+    public void ignoresWhitespaceBetweenElements() throws Exception {
+        String compact = SUBMISSION.replace("\n  ", "").replace("\n", "");
+        String indented = SUBMISSION.replace("><", ">\n    <");
+        assertEquals(xmlHash(SUBMISSION), xmlHash(compact));
+        assertEquals(xmlHash(SUBMISSION), xmlHash(indented));
+    }
+
+    @Test
+    public void textAndAttributeChangesHash() throws Exception {
+        assertNotEquals(xmlHash(SUBMISSION), xmlHash(SUBMISSION.replace("lang=\"en\"", "lang=\"de\"")));
+        assertNotEquals(xmlHash(SUBMISSION), xmlHash(SUBMISSION.replace(">Main.java<", ">Util.java<")));
+    }
+
+    @Test
+    public void fileContentAndRenameChangeHash() throws Exception {
+        String hash = zipHash(0, "src/Main.java", MAIN, "src/Util.java", UTIL);
+        assertNotEquals(hash, zipHash(0, "src/Main.java", MAIN + " ", "src/Util.java", UTIL));
+        assertNotEquals(hash, zipHash(0, "src/Main2.java", MAIN, "src/Util.java", UTIL));
+        // moving content from one file to the other must not go unnoticed either
+        assertNotEquals(hash, zipHash(0, "src/Main.java", MAIN + UTIL, "src/Util.java", ""));
+    }
+
+    @Test
+    public void ignoresZipEntryOrderAndTimestamps() throws Exception {
+        String hash = zipHash(0, "src/Main.java", MAIN, "src/Util.java", UTIL);
+        assertEquals(hash, zipHash(0, "src/Util.java", UTIL, "src/Main.java", MAIN));
+        assertEquals(hash, zipHash(1_700_000_000_000L, "src/Main.java", MAIN, "src/Util.java", UTIL));
+    }
+
+    private static String xmlHash(String submissionXml) throws Exception {
+        return hash(new SubmissionResource(submissionXml.getBytes(StandardCharsets.UTF_8), MimeType.XML));
+    }
+
+    /**
+     * @param files alternating paths and contents of the files zipped along with the submission xml
+     */
+    private static String zipHash(long time, String... files) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(bos)) {
+            putEntry(zos, "submission.xml", SUBMISSION, time);
+            for (int i = 0; i < files.length; i += 2)
+                putEntry(zos, files[i], files[i + 1], time);
+        }
+        return hash(new SubmissionResource(bos.toByteArray(), MimeType.ZIP));
+    }
+
+    private static void putEntry(ZipArchiveOutputStream zos, String path, String content, long time)
+        throws Exception {
+        ZipArchiveEntry entry = new ZipArchiveEntry(path);
+        entry.setTime(time);
+        zos.putArchiveEntry(entry);
+        zos.write(content.getBytes(StandardCharsets.UTF_8));
+        zos.closeArchiveEntry();
+    }
+
+    private static String hash(SubmissionResource resource) throws Exception {
+        try (SubmissionWrapperImpl subm = new SubmissionWrapperImpl(resource)) {
+            return subm.getNormalizedContentHash();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package de.hsh.grappa.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import de.hsh.grappa.application.GrappaServlet;
+import de.hsh.grappa.cache.RedisController;
+import de.hsh.grappa.config.GrappaConfig;
+import de.hsh.grappa.exceptions.NotFoundException;
+import de.hsh.grappa.proforma.MimeType;
+import de.hsh.grappa.proforma.SubmissionResource;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures RedisController throughput under a mixed load of submitting clients,
+ * polling clients and grader pools popping submissions, i.e. the calls that
+ * hit the cache concurrently on a busy instance.
+ *
+ * This is not part of the regular test run. It requires a running redis as
+ * configured in the grappa config file. Run it manually:
+ * mvn test -Dtest=RedisControllerBenchmark
+ */
+public class RedisControllerBenchmark {
+    private static final String GRADER_ID = "RedisControllerBenchmark";
+    private static final int CLIENT_THREADS = 32;
+    private static final long DURATION_SECONDS = 10;
+
+    private final List<String> gradeProcIds = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void init() throws Exception {
+        var configFile = new File(GrappaServlet.CONFIG_FILENAME_PATH);
+        Assume.assumeTrue("Missing grappa config file", configFile.exists());
+        GrappaConfig config = new ObjectMapper(new YAMLFactory()).readValue(configFile, GrappaConfig.class);
+        RedisController.getInstance().init(config.getCache());
+        Assume.assumeTrue("Redis is not available", RedisController.getInstance().ping());
+    }
+
+    @After
+    public void cleanup() {
+        for (String gradeProcId : gradeProcIds)
+            RedisController.getInstance().removeSubmission(gradeProcId);
+        RedisController.getInstance().shutdown();
+    }
+
+    @Test
+    public void mixedSubmitPollPopLoad() throws Exception {
+        var submission = new SubmissionResource(new byte[16 * 1024], MimeType.ZIP);
+        AtomicLong submits = new AtomicLong(), polls = new AtomicLong(), pops = new AtomicLong();
+        ExecutorService exec = Executors.newFixedThreadPool(CLIENT_THREADS);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CLIENT_THREADS; ++i) {
+            final int role = i % 4;
+            futures.add(exec.submit(() -> {
+                var rand = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    if (role == 0) {
+                        String gradeProcId = UUID.randomUUID().toString();
+                        // a distinct submission key per push, so nothing is coalesced
+                        RedisController.getInstance().pushSubmission(GRADER_ID, gradeProcId, gradeProcId,
+                            "benchmark-task", submission, false);
+                        gradeProcIds.add(gradeProcId);
+                        submits.incrementAndGet();
+                    } else if (role == 1) {
+                        try {
+                            RedisController.getInstance().popSubmission(GRADER_ID, 60);
+                        } catch (NotFoundException e) {
+                            // queue is empty
+                        }
+                        pops.incrementAndGet();
+                    } else if (!gradeProcIds.isEmpty()) {
+                        // poll a submission's queue position like a client waiting for its result would
+                        String gradeProcId = gradeProcIds.get(rand.nextInt(gradeProcIds.size()));
+                        RedisController.getInstance().getQueuedSubmissionIndex(gradeProcId);
+                        RedisController.getInstance().getResponse(gradeProcId);
+                        polls.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures)
+            f.get();
+        exec.shutdown();
+        long total = submits.get() + polls.get() + pops.get();
+        System.out.println(String.format("%d threads, %d s: %d submits, %d polls, %d pops, %.0f ops/s",
+            CLIENT_THREADS, DURATION_SECONDS, submits.get(), polls.get(), pops.get(),
+            (double) total / DURATION_SECONDS));
+    }
+}
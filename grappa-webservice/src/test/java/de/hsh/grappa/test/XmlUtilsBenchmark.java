@@ -0,0 +1,92 @@
+package de.hsh.grappa.test;
+
+import de.hsh.grappa.utils.XmlUtils;
+import org.junit.Assume;
+import org.junit.Test;
+import proforma.xml.ResponseType;
+import proforma.xml.SubmissionType;
+import proforma.xml.TaskType;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBIntrospector;
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per call cost of marshalling and unmarshalling the proforma
+ * root types with a new JAXBContext per call, as it used to be, to the
+ * cached contexts and pooled (un)marshallers of XmlUtils.
+ *
+ * This is not part of the regular test run. Run it manually:
+ * mvn test -Dtest=XmlUtilsBenchmark -Dbenchmark=true
+ */
+public class XmlUtilsBenchmark {
+    private static final int WARMUP_CALLS = 200;
+    private static final int MEASURED_CALLS = 1000;
+
+    @Test
+    public void compareUncachedAndCachedContexts() throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        var task = new TaskType();
+        task.setUuid("7b1ee5a9-9c27-4a3c-9c2e-4e56b5a3a0f1");
+        task.setTitle("Benchmark task");
+        task.setDescription("A task used to benchmark XML binding");
+        task.setLang("en");
+        var submission = new SubmissionType();
+        submission.setTask(task);
+        var response = new ResponseType();
+        response.setLang("en");
+
+        run(SubmissionType.class, submission);
+        run(TaskType.class, task);
+        run(ResponseType.class, response);
+    }
+
+    private static <T> void run(Class<T> type, T pojo) throws Exception {
+        byte[] xml = XmlUtils.marshalToXml(pojo, type).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < WARMUP_CALLS; ++i) {
+            unmarshalUncached(xml, type);
+            XmlUtils.unmarshalToObject(xml, type);
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; ++i)
+            unmarshalUncached(xml, type);
+        long uncachedUnmarshal = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; ++i)
+            XmlUtils.unmarshalToObject(xml, type);
+        long cachedUnmarshal = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; ++i)
+            marshalUncached(pojo, type);
+        long uncachedMarshal = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; ++i)
+            XmlUtils.marshalToXml(pojo, type);
+        long cachedMarshal = System.nanoTime() - begin;
+
+        report(type, "unmarshal", uncachedUnmarshal, cachedUnmarshal);
+        report(type, "marshal", uncachedMarshal, cachedMarshal);
+    }
+
+    private static Object unmarshalUncached(byte[] xml, Class<?> type) throws Exception {
+        return JAXBIntrospector.getValue(JAXBContext.newInstance(type).createUnmarshaller()
+            .unmarshal(new ByteArrayInputStream(xml)));
+    }
+
+    private static String marshalUncached(Object pojo, Class<?> type) throws Exception {
+        StringWriter sw = new StringWriter();
+        JAXBContext.newInstance(type).createMarshaller().marshal(pojo, sw);
+        return sw.toString();
+    }
+
+    private static void report(Class<?> type, String op, long uncachedNanos, long cachedNanos) {
+        System.out.println(String.format("%-14s %-9s uncached: %8.1f us/call, cached: %6.1f us/call (%.0fx)",
+            type.getSimpleName(), op, uncachedNanos / 1000.0 / MEASURED_CALLS, cachedNanos / 1000.0 / MEASURED_CALLS,
+            (double) uncachedNanos / cachedNanos));
+    }
+}
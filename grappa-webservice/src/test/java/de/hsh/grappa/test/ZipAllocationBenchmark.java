@@ -0,0 +1,115 @@
+package de.hsh.grappa.test;
+
+import de.hsh.grappa.utils.Zip;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the bytes allocated per read of a typical submission ZIP (a
+ * submission.xml, a task.xml and a couple of source files), comparing the
+ * former 10 MB copy buffer per call to the right-sized reads of Zip.
+ *
+ * This is not part of the regular test run. Run it manually:
+ * mvn test -Dtest=ZipAllocationBenchmark -Dbenchmark=true
+ */
+public class ZipAllocationBenchmark {
+    private static final int FILES = 20;
+    private static final int FILE_SIZE = 20 * 1024;
+    private static final int WARMUP_CALLS = 200;
+    private static final int MEASURED_CALLS = 500;
+
+    private interface ZipRead {
+        Object read(byte[] zip) throws Exception;
+    }
+
+    @Test
+    public void compareAllocatedBytesPerRead() throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        var threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Allocation counting is not supported by this JVM",
+            threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported());
+        byte[] zip = createSubmissionZip();
+        System.out.println(String.format("ZIP of %d files, %d KiB compressed, %d KiB uncompressed", FILES + 2,
+            zip.length / 1024, (FILES * FILE_SIZE) / 1024));
+
+        report("getFileFromZip, former 10 MB buffer", run(z -> legacyGetFileFromZip(z, "submission.xml"), zip));
+        report("getFileFromZip(InputStream)",
+            run(z -> Zip.getFileFromZip(new ByteArrayInputStream(z), "submission.xml"), zip));
+        report("getFileFromZip(byte[])", run(z -> Zip.getFileFromZip(z, "submission.xml"), zip));
+        report("readZipFileToMap(InputStream)", run(z -> Zip.readZipFileToMap(new ByteArrayInputStream(z)), zip));
+        report("indexZipFile", run(Zip::indexZipFile, zip));
+        report("indexZipFile, all entries read", run(z -> {
+            var elements = Zip.indexZipFile(z);
+            for (Zip.ZipContentElement e : elements.values())
+                e.getBytes();
+            return elements;
+        }, zip));
+    }
+
+    private static long run(ZipRead read, byte[] zip) throws Exception {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_CALLS; ++i)
+            read.read(zip);
+        long begin = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; ++i)
+            read.read(zip);
+        return (threadBean.getThreadAllocatedBytes(threadId) - begin) / MEASURED_CALLS;
+    }
+
+    private static void report(String name, long bytesPerCall) {
+        System.out.println(String.format("%-36s %10d bytes allocated per call", name, bytesPerCall));
+    }
+
+    private static byte[] createSubmissionZip() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(bos)) {
+            for (int i = 0; i < FILES; ++i) {
+                StringBuilder sb = new StringBuilder();
+                while (sb.length() < FILE_SIZE)
+                    sb.append("    System.out.println(\"line ").append(sb.length()).append("\");\n");
+                putEntry(zip, String.format("src/File%d.java", i), sb.substring(0, FILE_SIZE));
+            }
+            putEntry(zip, "task/task.xml", "<task xmlns=\"urn:proforma:v2.1\" uuid=\"u\"/>");
+            putEntry(zip, "submission.xml", "<submission xmlns=\"urn:proforma:v2.1\"/>");
+        }
+        return bos.toByteArray();
+    }
+
+    private static void putEntry(ZipArchiveOutputStream zip, String name, String content) throws Exception {
+        zip.putArchiveEntry(new ZipArchiveEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeArchiveEntry();
+    }
+
+    /**
+     * How Zip.getFileFromZip() used to read an entry
+     */
+    private static byte[] legacyGetFileFromZip(byte[] zipBytes, String fileName) throws Exception {
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new BufferedInputStream(
+            new ByteArrayInputStream(zipBytes)))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ZipArchiveEntry entry;
+            while (null != (entry = zip.getNextZipEntry())) {
+                if (entry.getName().equals(fileName)) {
+                    byte[] buffer = new byte[10000000]; // 10Mb file
+                    int len;
+                    while (-1 != (len = zip.read(buffer)))
+                        out.write(buffer, 0, len);
+                    break;
+                }
+            }
+            return out.toByteArray();
+        }
+    }
+}
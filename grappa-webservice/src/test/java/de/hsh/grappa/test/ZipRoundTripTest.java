@@ -0,0 +1,159 @@
+package de.hsh.grappa.test;
+
+import de.hsh.grappa.utils.Zip;
+import de.hsh.grappa.utils.ZipView;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rewrites an indexed ZIP, where unmodified entries are copied with their
+ * original compressed data, and reads it back.
+ */
+public class ZipRoundTripTest {
+    private static final String STORED = "stored.txt";
+    private static final String DEFLATED = "src/Deflated.java";
+    private static final String DATA_DESCRIPTOR = "src/DataDescriptor.java";
+    private static final String MODIFIED = "src/Modified.java";
+
+    @Test
+    public void rewritesModifiedAndCopiesUnmodifiedEntries() throws Exception {
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put(STORED, content("stored", 100));
+        expected.put(DEFLATED, content("deflated", 2000));
+        expected.put(DATA_DESCRIPTOR, content("data descriptor", 3000));
+        expected.put(MODIFIED, content("original", 1000));
+        byte[] original = createZip(expected);
+        // make sure the entries are written the way this test is about
+        try (ZipView zip = new ZipView(original)) {
+            assertEquals(ZipEntry.STORED, zip.getEntry(STORED).getMethod());
+            assertFalse(zip.getEntry(STORED).getGeneralPurposeBit().usesDataDescriptor());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry(DEFLATED).getMethod());
+            assertFalse(zip.getEntry(DEFLATED).getGeneralPurposeBit().usesDataDescriptor());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry(DATA_DESCRIPTOR).getMethod());
+            assertTrue(zip.getEntry(DATA_DESCRIPTOR).getGeneralPurposeBit().usesDataDescriptor());
+        }
+
+        Map<String, Zip.ZipContentElement> elements = Zip.indexZipFile(original);
+        expected.put(MODIFIED, content("modified", 1500));
+        elements.get(MODIFIED).setBytes(expected.get(MODIFIED));
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        Zip.writeMapToZipFile(elements, rewritten);
+
+        try (ZipView zip = new ZipView(rewritten.toByteArray())) {
+            assertEquals(expected.size(), Collections.list(zip.getEntries()).size());
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                ZipArchiveEntry entry = zip.getEntry(e.getKey());
+                byte[] bytes = zip.getBytes(entry);
+                assertArrayEquals(e.getKey(), e.getValue(), bytes);
+                assertEquals(e.getKey(), e.getValue().length, entry.getSize());
+                assertEquals(e.getKey(), crc(e.getValue()), entry.getCrc());
+            }
+        }
+        // the unmodified entries keep their method
+        try (ZipView zip = new ZipView(rewritten.toByteArray())) {
+            assertEquals(ZipEntry.STORED, zip.getEntry(STORED).getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry(DEFLATED).getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry(DATA_DESCRIPTOR).getMethod());
+        }
+    }
+
+    @Test
+    public void keepsContentChangedInPlace() throws Exception {
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put(STORED, content("stored", 100));
+        expected.put(DEFLATED, content("deflated", 2000));
+        expected.put(DATA_DESCRIPTOR, content("data descriptor", 3000));
+        Map<String, Zip.ZipContentElement> elements = Zip.indexZipFile(createZip(expected));
+        // accessed, but unchanged
+        assertArrayEquals(expected.get(DEFLATED), elements.get(DEFLATED).getBytes());
+        for (String path : new String[]{STORED, DATA_DESCRIPTOR}) {
+            byte[] bytes = elements.get(path).getBytes();
+            bytes[0] = 'X';
+            expected.put(path, bytes.clone());
+            assertFalse(elements.get(path).isModified());
+        }
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        Zip.writeMapToZipFile(elements, rewritten);
+
+        try (ZipView zip = new ZipView(rewritten.toByteArray())) {
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                ZipArchiveEntry entry = zip.getEntry(e.getKey());
+                assertArrayEquals(e.getKey(), e.getValue(), zip.getBytes(entry));
+                assertEquals(e.getKey(), crc(e.getValue()), entry.getCrc());
+            }
+        }
+    }
+
+    private static byte[] content(String text, int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; ++i)
+            sb.append(text).append(' ').append(i).append('\n');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the STORED entry stored, the DATA_DESCRIPTOR entry deflated with
+     * a data descriptor and any other entry deflated with its sizes in the
+     * local header.
+     */
+    private static byte[] createZip(Map<String, byte[]> files) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            for (Map.Entry<String, byte[]> f : files.entrySet()) {
+                byte[] bytes = f.getValue();
+                ZipEntry entry = new ZipEntry(f.getKey());
+                if (STORED.equals(f.getKey())) {
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(bytes.length);
+                    entry.setCrc(crc(bytes));
+                } else if (!DATA_DESCRIPTOR.equals(f.getKey())) {
+                    // Known sizes and checksum keep ZipOutputStream from writing a data descriptor
+                    entry.setMethod(ZipEntry.DEFLATED);
+                    entry.setSize(bytes.length);
+                    entry.setCompressedSize(deflatedSize(bytes));
+                    entry.setCrc(crc(bytes));
+                }
+                zos.putNextEntry(entry);
+                zos.write(bytes);
+                zos.closeEntry();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static long deflatedSize(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            long size = 0;
+            while (!deflater.finished())
+                size += deflater.deflate(buffer);
+            return size;
+        } finally {
+            deflater.end();
+        }
+    }
+}